@@ -0,0 +1,69 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Running the workloads on each backend. Scanning, parsing and resolving happen once in
+// setup, so only execution is measured.
+//
+// The JIT tier is on with its default threshold; pass -jvmArgsAppend -Dlox.jit.threshold=0
+// to measure the plain tree-walker.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({ "fib", "recursion", "loop", "strings", "closures", "nesting" })
+    String workload;
+
+    @Param({ "interpreter", "vm", "nodes" })
+    String backend;
+
+    private Interpreter interpreter;
+    private VM vm;
+    private NodeInterpreter nodeInterpreter;
+
+    private List<Stmt> statements;
+    private CompiledFunction script;
+
+    @Setup
+    public void setup() {
+        interpreter = new Interpreter();
+        vm = new VM(interpreter);
+        nodeInterpreter = new NodeInterpreter(interpreter);
+
+        statements = Workloads.compile(Workloads.source(workload));
+        script = new BytecodeCompiler().compile(statements);
+    }
+
+    @Benchmark
+    public Object run() {
+        switch (backend) {
+            case "vm":
+                vm.run(script);
+                break;
+            case "nodes":
+                nodeInterpreter.run(statements);
+                break;
+            default:
+                interpreter.interpreter(statements);
+        }
+
+        return Workloads.result(interpreter);
+    }
+}
@@ -0,0 +1,81 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Telling keywords from identifiers, for every word of the workloads: Scanner.keyword
+// against the substring + HashMap lookup the scanner used to do.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordBenchmark {
+
+    private static final Map<String, TokenType> keywords = new HashMap<>();
+
+    static {
+        for (String keyword : new String[] {
+            "and", "class", "else", "false", "for", "fun", "if", "nil", "or",
+            "print", "return", "super", "this", "true", "var", "while", "break"
+        }) {
+            keywords.put(keyword, TokenType.valueOf(keyword.toUpperCase()));
+        }
+    }
+
+    private char[] source;
+
+    // where each word starts, and how long it is
+    private int[] starts;
+    private int[] lengths;
+
+    @Setup
+    public void setup() {
+        String corpus = Workloads.corpus(1);
+        source = corpus.toCharArray();
+
+        Matcher words = Pattern.compile("[A-Za-z_][A-Za-z_0-9]*").matcher(corpus);
+        int count = 0;
+        while (words.find()) count++;
+
+        starts = new int[count];
+        lengths = new int[count];
+
+        words.reset();
+        for (int i = 0; words.find(); i++) {
+            starts[i] = words.start();
+            lengths[i] = words.end() - words.start();
+        }
+    }
+
+    @Benchmark
+    public void matcher(Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            blackhole.consume(Scanner.keyword(source, starts[i], lengths[i]));
+        }
+    }
+
+    @Benchmark
+    public void map(Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            TokenType type = keywords.get(new String(source, starts[i], lengths[i]));
+            blackhole.consume(type == null ? TokenType.IDENTIFIER : type);
+        }
+    }
+}
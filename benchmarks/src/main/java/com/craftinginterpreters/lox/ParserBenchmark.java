@@ -0,0 +1,61 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parsing already scanned tokens: deeply nested expressions, and a large ordinary program.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    // how many parenthesized expressions are nested in each other
+    @Param({ "10", "200" })
+    int depth;
+
+    private TokenBuffer nested;
+    private TokenBuffer program;
+
+    @Setup
+    public void setup() {
+        // print (((1 + 1) * 1) - -1) ... ;
+        String[] operators = { " + ", " * ", " - -", " / " };
+        StringBuilder source = new StringBuilder("print ");
+        for (int i = 0; i < depth; i++) {
+            source.append('(');
+        }
+        source.append('1');
+        for (int i = 0; i < depth; i++) {
+            source.append(operators[i % operators.length]).append("1)");
+        }
+        source.append(';');
+
+        nested = new Scanner(source.toString()).scanTokens();
+        program = new Scanner(Workloads.corpus(depth)).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> nestedExpression() {
+        return new Parser(nested).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> program() {
+        return new Parser(program).parse();
+    }
+}
@@ -0,0 +1,182 @@
+package com.craftinginterpreters.lox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/*
+ * End-to-end regression check: runs every workload through Lox.runFile, in this process,
+ * and compares what it measured against a stored baseline.
+ *
+ *   java -cp target/benchmarks.jar com.craftinginterpreters.lox.RegressionRunner \
+ *       [--record] [--vm | --nodes] [workload directory]
+ *
+ * For each workload it measures, as the median of the measured runs:
+ *
+ * - wall time of the whole runFile (scan, parse, resolve, run),
+ * - bytes allocated by this thread, and
+ * - peak heap usage (sum of the heap pools' peaks, after a GC).
+ *
+ * Any metric more than the tolerance above its baseline is reported as a regression and
+ * the runner exits with 1. --record writes the measurements as the new baseline instead.
+ *
+ * Baselines only mean something on the machine they were recorded on, so none is checked
+ * in: the first run on a machine (or with a backend that has no baseline yet) records what
+ * it measured, and later runs compare against that.
+ */
+public class RegressionRunner {
+
+    private static final int WARMUP = Integer.getInteger("lox.bench.warmup", 3);
+    private static final int RUNS = Integer.getInteger("lox.bench.runs", 5);
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("lox.bench.tolerance", "0.2"));
+    private static final String BASELINE = System.getProperty("lox.bench.baseline", "baseline.properties");
+
+    private static final String[] METRICS = { "time.ms", "alloc.mb", "peak.heap.mb" };
+
+    private static final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        boolean record = false;
+        String directory = "src/main/resources/workloads";
+
+        for (String arg : args) {
+            if (arg.equals("--record")) {
+                record = true;
+            } else if (arg.equals("--vm")) {
+                Lox.backend = Lox.Backend.VM;
+            } else if (arg.equals("--nodes")) {
+                Lox.backend = Lox.Backend.NODES;
+            } else {
+                directory = arg;
+            }
+        }
+
+        String backend = Lox.backend.name().toLowerCase();
+        Properties baseline = load(BASELINE);
+
+        System.out.printf("%-12s %10s %18s %10s %18s %10s %18s%n", "workload", "time ms", "", "alloc MB", "", "peak MB", "");
+
+        boolean regressed = false;
+        boolean recorded = record;
+        for (String name : Workloads.NAMES) {
+            String path = new File(directory, name + ".lox").getPath();
+            double[] measured = measure(path);
+
+            StringBuilder line = new StringBuilder(String.format("%-12s", name));
+            for (int i = 0; i < METRICS.length; i++) {
+                String key = backend + "." + name + "." + METRICS[i];
+                String previous = baseline.getProperty(key);
+
+                if (!record && previous != null) {
+                    double base = Double.parseDouble(previous);
+                    boolean worse = measured[i] > base * (1 + TOLERANCE);
+                    regressed |= worse;
+
+                    line.append(String.format(" %10.1f (base %8.1f)%s", measured[i], base, worse ? " !!" : "   "));
+                } else {
+                    // a metric without a baseline yet: this run's becomes it
+                    recorded = true;
+                    line.append(String.format(" %10.1f %18s", measured[i], ""));
+                    baseline.setProperty(key, String.format("%.1f", measured[i]));
+                }
+            }
+
+            System.out.println(line);
+        }
+
+        if (recorded) {
+            try (OutputStream output = new FileOutputStream(BASELINE)) {
+                baseline.store(output, "Recorded by RegressionRunner, see README");
+            }
+
+            System.out.println("Baseline written to " + BASELINE);
+        }
+
+        if (regressed) {
+            System.out.printf("Regressions (!!) found: more than %.0f%% above baseline%n", TOLERANCE * 100);
+            System.exit(1);
+        }
+    }
+
+    // median time (ms), allocation (MB) and peak heap (MB) of RUNS runs, after WARMUP
+    private static double[] measure(String path) throws IOException {
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heap.add(pool);
+        }
+
+        for (int i = 0; i < WARMUP; i++) {
+            run(path);
+        }
+
+        double[] times = new double[RUNS];
+        double[] allocations = new double[RUNS];
+        double[] peaks = new double[RUNS];
+
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < RUNS; i++) {
+            System.gc();
+            for (MemoryPoolMXBean pool : heap) {
+                pool.resetPeakUsage();
+            }
+
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+
+            run(path);
+
+            times[i] = (System.nanoTime() - start) / 1e6;
+            allocations[i] = (threads.getThreadAllocatedBytes(thread) - allocated) / 1e6;
+
+            long peak = 0;
+            for (MemoryPoolMXBean pool : heap) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            peaks[i] = peak / 1e6;
+        }
+
+        return new double[] { median(times), median(allocations), median(peaks) };
+    }
+
+    private static void run(String path) throws IOException {
+        Lox.hadError = false;
+        Lox.hadRuntimeError = false;
+
+        Lox.runFile(path);
+
+        if (Lox.hadError || Lox.hadRuntimeError) {
+            throw new IllegalStateException("Workload " + path + " failed");
+        }
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+
+    private static Properties load(String path) throws IOException {
+        Properties properties = new Properties();
+
+        File file = new File(path);
+        if (file.exists()) {
+            try (InputStream input = new FileInputStream(file)) {
+                properties.load(input);
+            }
+        }
+
+        return properties;
+    }
+}
@@ -0,0 +1,66 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// The .lox programs under resources/workloads, and the steps to get them ready to run.
+//
+// Workloads don't print anything, they leave their outcome in a global named `result`
+// so benchmarks can hand it to a Blackhole.
+final class Workloads {
+
+    static final String[] NAMES = { "fib", "recursion", "loop", "strings", "closures", "nesting" };
+
+    private static final Token RESULT = new Token(TokenType.IDENTIFIER, "result", null, 0);
+
+    private Workloads() {
+    }
+
+    static String source(String name) {
+        String path = "/workloads/" + name + ".lox";
+        try (InputStream input = Workloads.class.getResourceAsStream(path)) {
+            if (input == null) throw new IllegalArgumentException("No workload " + path);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = input.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // every workload, one after the other, `copies` times: a big chunk of realistic code
+    static String corpus(int copies) {
+        StringBuilder corpus = new StringBuilder();
+        for (int i = 0; i < copies; i++) {
+            for (String name : NAMES) {
+                corpus.append(source(name)).append('\n');
+            }
+        }
+
+        return corpus.toString();
+    }
+
+    // what Lox.run does before handing the program to a backend
+    static List<Stmt> compile(String source) {
+        Lox.hadError = false;
+
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        if (!Lox.hadError) new Resolver().resolve(statements);
+        if (Lox.hadError) throw new IllegalStateException("Workload doesn't compile");
+
+        return new Optimizer().optimize(statements);
+    }
+
+    static Object result(Interpreter interpreter) {
+        return interpreter.globals.get(RESULT);
+    }
+}
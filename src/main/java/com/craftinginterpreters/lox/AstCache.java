@@ -0,0 +1,87 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Programs already parsed, resolved and optimized, by the SHA-256 of their source, so
+ * running the same script again goes straight to the backend (see Lox.runFile).
+ *
+ * A cached program is the same List<Stmt> every time. That's fine: what the resolver and
+ * the optimizer write into the nodes only depends on the source, and what the interpreter
+ * writes (CallCache) is checked before it's used.
+ *
+ * The cache is bounded by how much memory its programs take, which is estimated from their
+ * number of tokens and the size of their source (the Tokens in the AST point into it). Past
+ * that bound, the least recently run programs are dropped first.
+ */
+class AstCache {
+    // What a parsed, resolved and optimized program takes per token: the heap it adds once
+    // parsed (after a GC), over its token count. That's 38 bytes on a 2.5M-token script, and
+    // between 36 and 49 on the benchmark workloads, where a few big nodes weigh more.
+    private static final int BYTES_PER_TOKEN = 40;
+
+    private static class Entry {
+        final List<Stmt> statements;
+        final long size;
+
+        Entry(List<Stmt> statements, long size) {
+            this.statements = statements;
+            this.size = size;
+        }
+    }
+
+    private final long capacity;
+    private long size = 0;
+
+    // in access order: the eldest is the least recently used
+    private final LinkedHashMap<ByteBuffer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    AstCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    // The key for a source: its hash, in a ByteBuffer since those compare by content.
+    static ByteBuffer key(ByteBuffer source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.duplicate());
+
+            return ByteBuffer.wrap(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-256
+            throw new AssertionError(e);
+        }
+    }
+
+    static long estimateSize(int tokenCount, int sourceLength) {
+        return (long) tokenCount * BYTES_PER_TOKEN + 2L * sourceLength;
+    }
+
+    synchronized List<Stmt> get(ByteBuffer key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+
+        return entry.statements;
+    }
+
+    // A program bigger than the whole cache isn't kept.
+    synchronized void put(ByteBuffer key, List<Stmt> statements, long estimatedSize) {
+        if (estimatedSize > capacity) return;
+
+        Entry old = entries.put(key, new Entry(statements, estimatedSize));
+        if (old != null) size -= old.size;
+        size += estimatedSize;
+
+        Iterator<Map.Entry<ByteBuffer, Entry>> eldest = entries.entrySet().iterator();
+        while (size > capacity) {
+            size -= eldest.next().getValue().size;
+            eldest.remove();
+        }
+    }
+}
@@ -37,7 +37,7 @@ class AstPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+        return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
     }
 
     @Override
@@ -70,12 +70,12 @@ class AstPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitLogicalExpr(Expr.Logical expr) {
-        return String.format("%s %s %s", expr.left.toString(), expr.operator.lexeme, expr.right.toString());
+        return String.format("%s %s %s", expr.left.toString(), expr.operator.lexeme(), expr.right.toString());
     }
 
     @Override
     public String visitUnaryExpr(Expr.Unary expr) {
-        return parenthesize(expr.operator.lexeme, expr.right);
+        return parenthesize(expr.operator.lexeme(), expr.right);
     }
 
     @Override
@@ -0,0 +1,362 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.OpCode.*;
+
+/*
+ * Lowers the (already resolved) AST into bytecode for the VM.
+ *
+ * Variables are not re-resolved here: the Resolver already stored (depth, slot) in the
+ * AST, and the VM creates exactly the same environments as the Interpreter (one per
+ * block, one per call), so those numbers can be used as-is.
+ *
+ * Every expression leaves exactly one value on the VM stack, every statement leaves
+ * the stack as it found it.
+ */
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static class Loop {
+        final int scopeDepth;
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(int scopeDepth) {
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    private final CompiledFunction function;
+    private final List<Loop> loops = new ArrayList<>();
+
+    // number of PUSH_SCOPE currently open in the function being compiled
+    private int scopeDepth = 0;
+
+    BytecodeCompiler() {
+        this(new CompiledFunction("script", 0, 0));
+    }
+
+    private BytecodeCompiler(CompiledFunction function) {
+        this.function = function;
+    }
+
+    CompiledFunction compile(List<Stmt> statements) {
+        compileAll(statements);
+
+        emit(NIL, null);
+        emit(RETURN, null);
+
+        return function;
+    }
+
+    private void compileAll(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void emit(int op, Token token) {
+        function.chunk.write(op, token);
+    }
+
+    private void emit(int op, int operand, Token token) {
+        emit(op, token);
+        emit(operand, token);
+    }
+
+    // emits a jump with a placeholder target, returns where the target has to be patched in
+    private int emitJump(int op) {
+        emit(op, -1, null);
+        return function.chunk.count - 1;
+    }
+
+    private void patchJump(int operand) {
+        function.chunk.code[operand] = function.chunk.count;
+    }
+
+    private int constant(Object value) {
+        return function.chunk.addConstant(value);
+    }
+
+    private void define(Token name, int slot) {
+        if (slot == -1) {
+            emit(DEFINE_GLOBAL, constant(name.symbol()), name);
+        } else {
+            emit(DEFINE_LOCAL, slot, name);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        emit(PUSH_SCOPE, stmt.size, null);
+        scopeDepth++;
+
+        compileAll(stmt.statements);
+
+        scopeDepth--;
+        emit(POP_SCOPE, null);
+
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(POP, null);
+
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        CompiledFunction compiled = new CompiledFunction(stmt.name.lexeme(), stmt.params.size(), stmt.size);
+        new BytecodeCompiler(compiled).compile(stmt.body);
+
+        emit(CLOSURE, constant(compiled), stmt.name);
+        define(stmt.name, stmt.slot);
+
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+
+        int elseJump = emitJump(JUMP_IF_FALSE);
+        emit(POP, null);
+        compile(stmt.thenBranch);
+        int endJump = emitJump(JUMP);
+
+        patchJump(elseJump);
+        emit(POP, null);
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+
+        patchJump(endJump);
+
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(PRINT, null);
+
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emit(NIL, null);
+        }
+
+        emit(RETURN, stmt.keyword);
+
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(NIL, null);
+        }
+
+        define(stmt.name, stmt.slot);
+
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = function.chunk.count;
+        compile(stmt.condition);
+
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        emit(POP, null);
+
+        Loop loop = new Loop(scopeDepth);
+        loops.add(loop);
+        compile(stmt.body);
+        loops.remove(loops.size() - 1);
+
+        emit(JUMP, loopStart, null);
+
+        patchJump(exitJump);
+        emit(POP, null);
+
+        // break skips the POP above, the condition was already popped before the body ran
+        for (int breakJump : loop.breakJumps) {
+            patchJump(breakJump);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        // the Resolver already made sure we're inside a loop of this function
+        // leave every block opened inside the loop before jumping out of it
+        Loop loop = loops.get(loops.size() - 1);
+        for (int i = scopeDepth; i > loop.scopeDepth; i--) {
+            emit(POP_SCOPE, null);
+        }
+
+        loop.breakJumps.add(emitJump(JUMP));
+
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+
+        if (expr.depth == -1) {
+            emit(SET_GLOBAL, constant(expr.name.symbol()), expr.name);
+        } else {
+            emit(SET_LOCAL, expr.name);
+            emit(expr.depth, expr.name);
+            emit(expr.slot, expr.name);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+
+        // the separator operator evaluates both sides and keeps the right one
+        if (expr.operator.type == TokenType.COMMA) {
+            emit(POP, null);
+            compile(expr.right);
+            return null;
+        }
+
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case GREATER: emit(GREATER, expr.operator); break;
+            case GREATER_EQUAL: emit(GREATER_EQUAL, expr.operator); break;
+            case LESS: emit(LESS, expr.operator); break;
+            case LESS_EQUAL: emit(LESS_EQUAL, expr.operator); break;
+            case MINUS: emit(SUBTRACT, expr.operator); break;
+            case BANG_EQUAL: emit(NOT_EQUAL, expr.operator); break;
+            case EQUAL_EQUAL: emit(EQUAL, expr.operator); break;
+            case PLUS: emit(ADD, expr.operator); break;
+            case SLASH: emit(DIVIDE, expr.operator); break;
+            case STAR: emit(MULTIPLY, expr.operator); break;
+            default:
+                // same as the Interpreter: an unknown operator evaluates to nil
+                emit(POP, null);
+                emit(POP, null);
+                emit(NIL, null);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+
+        emit(CALL, expr.arguments.size(), expr.paren);
+
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        compile(expr.conditional);
+
+        int falsyJump = emitJump(JUMP_IF_FALSE);
+        emit(POP, null);
+        compile(expr.truthy);
+        int endJump = emitJump(JUMP);
+
+        patchJump(falsyJump);
+        emit(POP, null);
+        compile(expr.falsy);
+
+        patchJump(endJump);
+
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(NIL, null);
+        } else if (expr.value instanceof Boolean) {
+            emit((boolean) expr.value ? TRUE : FALSE, null);
+        } else {
+            emit(CONSTANT, constant(expr.value), null);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+
+        // short-circuiting: the left value stays on the stack as the result
+        int endJump = emitJump(expr.operator.type == TokenType.OR ? JUMP_IF_TRUE : JUMP_IF_FALSE);
+        emit(POP, null);
+        compile(expr.right);
+
+        patchJump(endJump);
+
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case BANG: emit(NOT, expr.operator); break;
+            case MINUS: emit(NEGATE, expr.operator); break;
+            default:
+                emit(POP, null);
+                emit(NIL, null);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth == -1) {
+            emit(GET_GLOBAL, constant(expr.name.symbol()), expr.name);
+        } else {
+            emit(GET_LOCAL, expr.name);
+            emit(expr.depth, expr.name);
+            emit(expr.slot, expr.name);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.craftinginterpreters.lox;
+
+// Inline cache for one call site (an Expr.Call), filled in by the Interpreter.
+//
+// - global : when the callee is a global name, the Binding it lives in. Globals never move
+//            to another Binding, so from then on the callee is one field read away instead
+//            of a hash lookup. Reassigning the global just changes binding.value, which is
+//            why the callee itself is checked against callees below every time.
+// - callees: the last few callables already checked at this site. The number of arguments
+//            of a call site never changes, so "seen here before" means "it is a LoxCallable
+//            and its arity matches", and the checks can be skipped.
+//
+// Sites seeing more than MAX_CALLEES different callables (a callback parameter receiving
+// fresh closures, say) stop remembering new ones and take the slow path.
+class CallCache {
+    private static final int MAX_CALLEES = 4;
+
+    Environment.Binding global;
+
+    private final LoxCallable[] callees = new LoxCallable[MAX_CALLEES];
+    private int count = 0;
+
+    LoxCallable lookup(Object callee) {
+        for (int i = 0; i < count; i++) {
+            if (callees[i] == callee) return callees[i];
+        }
+
+        return null;
+    }
+
+    void remember(LoxCallable callee) {
+        if (count < MAX_CALLEES) {
+            callees[count++] = callee;
+        }
+    }
+}
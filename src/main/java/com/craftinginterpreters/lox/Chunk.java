@@ -0,0 +1,47 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A sequence of instructions (see OpCode) together with the constants they refer to.
+//
+// For every instruction that can fail at runtime we also keep the token that produced
+// it, so the VM can throw the very same RuntimeError the Interpreter would.
+class Chunk {
+    int[] code = new int[16];
+    Token[] tokens = new Token[16];
+    int count = 0;
+
+    final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    void write(int value, Token token) {
+        if (count == code.length) {
+            int capacity = code.length * 2;
+
+            int[] newCode = new int[capacity];
+            System.arraycopy(code, 0, newCode, 0, count);
+            code = newCode;
+
+            Token[] newTokens = new Token[capacity];
+            System.arraycopy(tokens, 0, newTokens, 0, count);
+            tokens = newTokens;
+        }
+
+        code[count] = value;
+        tokens[count] = token;
+        count++;
+    }
+
+    // the same name or literal used many times only takes one slot in the pool
+    int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+
+        constants.add(value);
+        constantIndex.put(value, constants.size() - 1);
+        return constants.size() - 1;
+    }
+}
@@ -0,0 +1,23 @@
+package com.craftinginterpreters.lox;
+
+// Output of the Compiler for a single function (or for the top-level script).
+//
+// This is only the "code" part of a function, a VmFunction pairs it with the
+// environment it closes over at runtime.
+class CompiledFunction {
+    final String name;
+    final int arity;
+    final int size;
+    final Chunk chunk = new Chunk();
+
+    CompiledFunction(String name, int arity, int size) {
+        this.name = name;
+        this.arity = arity;
+        this.size = size;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
@@ -1,48 +1,89 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+// There are two kinds of environment:
+//
+// - The global environment, which is keyed by name. Globals can be (re)defined at any point
+//   in time (think REPL), so we can't know all of them ahead of time. Names are Symbols,
+//   so the lookup is an array index by the symbol's global id. Each name maps to a
+//   Binding that stays the same for the whole run, so callers (see CallCache) can keep it
+//   around and skip the lookup next time.
+// - Local environments (blocks and function calls). The Resolver already knows every local
+//   declared in them, so each one gets a fixed slot and the values are kept in an array.
 class Environment {
+    static final class Binding {
+        Object value;
+    }
+
     final Environment enclosing;
 
-    private final Map<String, Object> values = new HashMap<>();
+    // indexed by Symbol.global(), null where the name isn't defined (yet)
+    private Binding[] values;
+    private final Object[] slots;
 
     Environment() {
         enclosing = null;
+        values = new Binding[64];
+        slots = null;
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        values = null;
+        slots = new Object[size];
+    }
+
+    void define(Symbol name, Object value) {
+        int id = name.global();
+        if (id >= values.length) {
+            values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+        }
+
+        Binding binding = values[id];
+        if (binding == null) {
+            binding = new Binding();
+            values[id] = binding;
+        }
+
+        binding.value = value;
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    void define(int slot, Object value) {
+        slots[slot] = value;
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
+        return binding(name).value;
+    }
 
-        if (enclosing != null) {
-            return enclosing.get(name);
+    Binding binding(Token name) {
+        int id = name.symbol().global();
+        if (id < values.length && values[id] != null) {
+            return values[id];
         }
 
-        throw new RuntimeError(name, String.format("Undefined variable '%s'.", name.lexeme));
+        throw new RuntimeError(name, String.format("Undefined variable '%s'.", name.lexeme()));
+    }
+
+    Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
+        binding(name).value = value;
+    }
+
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
+    }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    private Environment ancestor(int distance) {
+        Environment environment = this;
+        for (int i = 0; i < distance; i++) {
+            environment = environment.enclosing;
         }
 
-        throw new RuntimeError(name, String.format("Undefined variable '%s'.", name.lexeme));
+        return environment;
     }
 }
@@ -20,6 +20,8 @@ abstract class Expr{
     static class Assign extends Expr {
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot;
 
         Assign(Token name, Expr value) {
             this.name = name;
@@ -51,6 +53,7 @@ abstract class Expr{
         final Expr callee;
         final Token paren;
         final List<Expr> arguments;
+        CallCache cache = new CallCache();
 
         Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee = callee;
@@ -135,6 +138,8 @@ abstract class Expr{
 
     static class Variable extends Expr {
         final Token name;
+        int depth = -1;
+        int slot;
 
         Variable(Token name) {
             this.name = name;
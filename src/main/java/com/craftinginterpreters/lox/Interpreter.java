@@ -1,22 +1,52 @@
 package com.craftinginterpreters.lox;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Interpreter.Completion> {
+
+    // How a statement finished. `return` and `break` are reported this way instead of
+    // being thrown, so they cost the same as a normal method return: every statement
+    // holding other statements (blocks, if, while) just stops and hands the signal
+    // up until a loop (BREAK) or LoxFunction.call (RETURN, TAIL_CALL) consumes it.
+    enum Completion {
+        NORMAL,
+        BREAK,
+        RETURN,
+        TAIL_CALL
+    }
+
+    // What JIT compiled code returns instead of a value when it ends in a tail call,
+    // the compiled counterpart of Completion.TAIL_CALL.
+    static final Object PENDING_TAIL_CALL = new Object();
 
     final Environment globals = new Environment();
     private Environment environment = globals;
 
+    // value of the last `return`, only meaningful along with Completion.RETURN
+    private Object returnValue = null;
+
+    // Argument stack shared by every call going through this interpreter (and the node
+    // and JIT backends). A call pushes its arguments, hands the callee the array and the
+    // index of the first one, and drops them once the callee returns, so passing arguments
+    // allocates nothing. See LoxCallable.
+    private Object[] arguments = new Object[64];
+    private int argumentsTop = 0;
+
+    // callee of the pending tail call, only meaningful along with Completion.TAIL_CALL.
+    // Its arguments are still on the argument stack, starting at tailFirst.
+    private LoxFunction tailCallee = null;
+    private int tailFirst = 0;
+
     Interpreter() {
-        globals.define("clock", new LoxCallable() {
+        globals.define(new Symbol("clock"), new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
+            public Object call(Interpreter interpreter, Object[] arguments, int first) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -37,8 +67,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    private void execute(Stmt statement) {
-        statement.accept(this);
+    private Completion execute(Stmt statement) {
+        return statement.accept(this);
     }
 
     // A better (more functional) way to do this is sending down the new environment in
@@ -48,21 +78,54 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     //
     // The trade-off though, our methods will become much more verbose. We choose to
     // do it this way (with mutating state and stuff) to get an easier to understand code.
-    void executeBlock(List<Stmt> statements, Environment environment) {
+    Completion executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for (Stmt statement : statements) {
-                execute(statement);
+                Completion completion = execute(statement);
+                if (completion != Completion.NORMAL) return completion;
             }
+
+            return Completion.NORMAL;
         } finally { // to make sure environment is back to the previous state even on exception
             this.environment = previous;
         }
 
     }
 
-    private String stringify(Object value) {
+    Completion returning(Object value) {
+        returnValue = value;
+        return Completion.RETURN;
+    }
+
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+
+        return value;
+    }
+
+    LoxFunction takeTailCallee() {
+        LoxFunction callee = tailCallee;
+        tailCallee = null;
+
+        // the arguments are read right away by the caller, before anything else is pushed
+        argumentsTop = tailFirst;
+
+        return callee;
+    }
+
+    Object[] arguments() {
+        return arguments;
+    }
+
+    int tailFirst() {
+        return tailFirst;
+    }
+
+    static String stringify(Object value) {
         if (value == null) return "nil";
 
         // Workaround Java adding ".0" to integer-valued doubles
@@ -80,171 +143,250 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        return executeBlock(stmt.statements, new Environment(environment, stmt.size));
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
 
-        return null; // lol fucking java
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
         LoxFunction function = new LoxFunction(stmt, environment);
-        environment.define(stmt.name.lexeme, function);
+        define(stmt.name, stmt.slot, function);
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+    public Completion visitIfStmt(Stmt.If stmt) {
+        if (evaluateCondition(stmt.condition)) {
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
         System.out.println(stringify(value));
 
-        return null; // ibid
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) {
+            Expr.Call call = (Expr.Call) stmt.value;
+            Object callee = callee(call);
+
+            int first = argumentsTop;
+            boolean deferred = false;
+            try {
+                for (Expr argument : call.arguments) {
+                    pushArgument(evaluate(argument));
+                }
+
+                // a deferred call's arguments stay pushed, takeTailCallee drops them
+                LoxCallable function = callable(call, callee);
+                deferred = deferTailCall(function, first);
+                if (deferred) return Completion.TAIL_CALL;
+
+                return returning(function.call(this, arguments, first));
+            } finally {
+                if (!deferred) argumentsTop = first;
+            }
+        }
+
         Object value = null;
         if (stmt.value != null) value = evaluate(stmt.value);
 
-        throw new Return(value);
+        return returning(value);
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
+        define(stmt.name, stmt.slot, value);
 
-        return null; // ibid
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        try {
-            while (isTruthy(evaluate(stmt.condition))) {
-                execute(stmt.body);
-            }
-        } catch (Break b) {
-            // do nothing (for now)
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        while (evaluateCondition(stmt.condition)) {
+            Completion completion = execute(stmt.body);
+
+            if (completion == Completion.BREAK) break;
+            if (completion != Completion.NORMAL) return completion;
         }
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
-        throw new Break();
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return Completion.BREAK;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        environment.assign(expr.name, value);
+        if (expr.depth == -1) {
+            globals.assign(expr.name, value);
+        } else {
+            environment.assignAt(expr.depth, expr.slot, value);
+        }
+
         return value;
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (isArithmetic(expr.operator)) {
+            double value = arithmetic(expr);
+            return missed ? takeMissed() : (Object) value;
+        }
+
+        if (isComparison(expr.operator)) {
+            return compare(expr);
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
-            case COMMA:
-                return right;
-            case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
-            case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
-            case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
-            case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
-            case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
-            case BANG_EQUAL: return !isEqual(left, right);
-            case EQUAL_EQUAL: return isEqual(left, right);
-            case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
-                }
+        return binary(expr.operator, left, right);
+    }
 
-                if (left instanceof String) {
-                    return (String) left + stringify(right);
-                }
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        Object callee = callee(expr);
 
-                if (right instanceof String) {
-                    return stringify(left) + (String) right;
-                }
+        int first = argumentsTop;
+        try {
+            for (Expr argument : expr.arguments) {
+                pushArgument(evaluate(argument));
+            }
 
-                throw new RuntimeError(expr.operator, "Operands must be two strings or two numbers");
-            case SLASH:
-                checkDivideByZero(expr.operator, right);
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left / (double) right;
-            case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
+            return callable(expr, callee).call(this, arguments, first);
+        } finally {
+            argumentsTop = first;
         }
-
-        return null;
     }
 
-    @Override
-    public Object visitCallExpr(Expr.Call expr) {
+    private Object callee(Expr.Call expr) {
+        CallCache cache = expr.cache;
+        if (cache.global != null) {
+            return cache.global.value;
+        }
+
         Object callee = evaluate(expr.callee);
+        if (expr.callee instanceof Expr.Variable && ((Expr.Variable) expr.callee).depth == -1) {
+            cache.global = globals.binding(((Expr.Variable) expr.callee).name);
+        }
+
+        return callee;
+    }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+    private LoxCallable callable(Expr.Call expr, Object callee) {
+        CallCache cache = expr.cache;
+
+        LoxCallable function = cache.lookup(callee);
+        if (function == null) {
+            function = checkCallable(expr.paren, callee, expr.arguments.size());
+            cache.remember(function);
         }
 
+        return function;
+    }
+
+    // Where the argument stack is now. Whoever pushes arguments goes back there with
+    // resetArguments afterwards, even when evaluating them throws.
+    int argumentsTop() {
+        return argumentsTop;
+    }
+
+    void resetArguments(int top) {
+        argumentsTop = top;
+    }
+
+    void pushArgument(Object value) {
+        if (argumentsTop == arguments.length) {
+            arguments = Arrays.copyOf(arguments, arguments.length * 2);
+        }
+
+        arguments[argumentsTop++] = value;
+    }
+
+    // Calls callee with the last argumentCount values pushed with pushArgument.
+    Object call(Token paren, Object callee, int argumentCount) {
+        int first = argumentsTop - argumentCount;
+        try {
+            return checkCallable(paren, callee, argumentCount).call(this, arguments, first);
+        } finally {
+            argumentsTop = first;
+        }
+    }
+
+    // `return callee(...)` from JIT compiled code, with the arguments already pushed.
+    // Returns the callee's result, or PENDING_TAIL_CALL when it was deferred.
+    Object tailCall(Token paren, Object callee, int argumentCount) {
+        LoxCallable function = checkCallable(paren, callee, argumentCount);
+        int first = argumentsTop - argumentCount;
+        if (deferTailCall(function, first)) return PENDING_TAIL_CALL;
+
+        try {
+            return function.call(this, arguments, first);
+        } finally {
+            argumentsTop = first;
+        }
+    }
+
+    // Lox functions aren't called from a tail position: they're left for the
+    // LoxFunction.call we're running in to pick up in its own loop, so a chain of tail
+    // calls runs in constant Java stack. Anything else is just called.
+    private boolean deferTailCall(LoxCallable function, int first) {
+        if (!(function instanceof LoxFunction)) return false;
+
+        tailCallee = (LoxFunction) function;
+        tailFirst = first;
+
+        return true;
+    }
+
+    private static LoxCallable checkCallable(Token paren, Object callee, int argumentCount) {
         if (!(callee instanceof LoxCallable)) {
-            throw new RuntimeError(expr.paren, "Can only call functions and classes.");
+            throw new RuntimeError(paren, "Can only call functions and classes.");
         }
 
         LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, String.format(
+        if (argumentCount != function.arity()) {
+            throw new RuntimeError(paren, String.format(
                 "Expected %s arguments but got %s.",
-                function.arity(), arguments.size()
+                function.arity(), argumentCount
             ));
         }
 
-        return function.call(this, arguments);
+        return function;
     }
 
     @Override
     public Object visitTernaryExpr(Expr.Ternary expr) {
-        Object conditonalResult = evaluate(expr.conditional);
+        boolean conditonalResult = evaluateCondition(expr.conditional);
 
-        return evaluate(isTruthy(conditonalResult) ? expr.truthy : expr.falsy);
+        return evaluate(conditonalResult ? expr.truthy : expr.falsy);
     }
 
     @Override
@@ -273,37 +415,103 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.MINUS) {
+            return negate(expr);
+        }
+
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
+        return unary(expr.operator, right);
+    }
+
+    @Override
+    public Object visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth == -1) return globals.get(expr.name);
+
+        return environment.getAt(expr.depth, expr.slot);
+    }
+
+    // slot is -1 for anything declared at the top level, see Resolver.
+    private void define(Token name, int slot, Object value) {
+        if (slot == -1) {
+            environment.define(name.symbol(), value);
+        } else {
+            environment.define(slot, value);
+        }
+    }
+
+    static Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
+            case COMMA:
+                return right;
+            case GREATER:
+                checkNumberOperands(operator, left, right);
+                return (double) left > (double) right;
+            case GREATER_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return (double) left >= (double) right;
+            case LESS:
+                checkNumberOperands(operator, left, right);
+                return (double) left < (double) right;
+            case LESS_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return (double) left <= (double) right;
+            case MINUS:
+                checkNumberOperands(operator, left, right);
+                return (double) left - (double) right;
+            case BANG_EQUAL: return !isEqual(left, right);
+            case EQUAL_EQUAL: return isEqual(left, right);
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+
+                if (left instanceof String) {
+                    return (String) left + stringify(right);
+                }
+
+                if (right instanceof String) {
+                    return stringify(left) + (String) right;
+                }
+
+                throw new RuntimeError(operator, "Operands must be two strings or two numbers");
+            case SLASH:
+                checkDivideByZero(operator, right);
+                checkNumberOperands(operator, left, right);
+                return (double) left / (double) right;
+            case STAR:
+                checkNumberOperands(operator, left, right);
+                return (double) left * (double) right;
+        }
+
+        return null;
+    }
+
+    static Object unary(Token operator, Object right) {
+        switch (operator.type) {
             case BANG:
                 return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
+                checkNumberOperand(operator, right);
                 return -(double) right;
         }
 
         return null;
     }
 
-    @Override
-    public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
-    }
-
-    private void checkDivideByZero(Token operator, Object left) {
+    static void checkDivideByZero(Token operator, Object left) {
         if (left instanceof Double && ((Double) left).intValue() == 0) {
             throw new RuntimeError(operator, "Cnanot divide by zero");
         }
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
+    static void checkNumberOperands(Token operator, Object left, Object right) {
         if (left instanceof Double && right instanceof Double) return;
 
         throw new RuntimeError(operator, "Operands must be numbers");
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    static void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) return;
         throw new RuntimeError(operator, "Operand must be a number");
     }
@@ -312,14 +520,177 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return expr.accept(this);
     }
 
-    private boolean isTruthy(Object object) {
+    // region: unboxed evaluation
+    //
+    // Every number coming out of evaluate() is a boxed Double, so `a * b + c` allocates once
+    // for `a * b` and once more for the sum, and `i < n` in a loop condition goes through
+    // a Boolean. The methods below evaluate arithmetic, comparisons and conditions on
+    // primitives instead, only boxing the final result if it has to be stored somewhere.
+    //
+    // A sub-expression can still turn out not to be a number (string concatenation, nil, an
+    // operand error...). In that case evaluateNumber() returns 0, sets `missed` and keeps the
+    // real value in `missedValue`. Callers must check `missed` right away and finish the
+    // operation with the boxed values through binary() / unary(), so the result (or error)
+    // is the same as before and nothing is evaluated twice.
+
+    private boolean missed = false;
+    private Object missedValue = null;
+
+    private Object takeMissed() {
+        Object value = missedValue;
+        missed = false;
+        missedValue = null;
+
+        return value;
+    }
+
+    private double unbox(Object value) {
+        if (value instanceof Double) return (double) value;
+
+        missed = true;
+        missedValue = value;
+        return 0;
+    }
+
+    private double evaluateNumber(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            return unbox(((Expr.Literal) expr).value);
+        }
+
+        if (expr instanceof Expr.Grouping) {
+            return evaluateNumber(((Expr.Grouping) expr).expression);
+        }
+
+        if (expr instanceof Expr.Binary && isArithmetic(((Expr.Binary) expr).operator)) {
+            return arithmetic((Expr.Binary) expr);
+        }
+
+        if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.MINUS) {
+            return negate((Expr.Unary) expr);
+        }
+
+        return unbox(evaluate(expr));
+    }
+
+    private boolean evaluateCondition(Expr expr) {
+        if (expr instanceof Expr.Binary && isComparison(((Expr.Binary) expr).operator)) {
+            return compare((Expr.Binary) expr);
+        }
+
+        if (expr instanceof Expr.Logical) {
+            // only the truthiness of `a and b` / `a or b` matters here, not which side it was
+            Expr.Logical logical = (Expr.Logical) expr;
+            if (logical.operator.type == TokenType.OR) {
+                return evaluateCondition(logical.left) || evaluateCondition(logical.right);
+            }
+
+            return evaluateCondition(logical.left) && evaluateCondition(logical.right);
+        }
+
+        if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.BANG) {
+            return !evaluateCondition(((Expr.Unary) expr).right);
+        }
+
+        if (expr instanceof Expr.Grouping) {
+            return evaluateCondition(((Expr.Grouping) expr).expression);
+        }
+
+        return isTruthy(evaluate(expr));
+    }
+
+    private double arithmetic(Expr.Binary expr) {
+        double left = evaluateNumber(expr.left);
+        boolean leftMissed = missed;
+        Object leftValue = leftMissed ? takeMissed() : null;
+
+        double right = evaluateNumber(expr.right);
+        boolean rightMissed = missed;
+        Object rightValue = rightMissed ? takeMissed() : null;
+
+        if (leftMissed || rightMissed) {
+            return unbox(binary(
+                expr.operator,
+                leftMissed ? leftValue : (Object) left,
+                rightMissed ? rightValue : (Object) right
+            ));
+        }
+
+        switch (expr.operator.type) {
+            case MINUS: return left - right;
+            case STAR: return left * right;
+            case PLUS: return left + right;
+            default:
+                if ((int) right == 0) throw new RuntimeError(expr.operator, "Cnanot divide by zero");
+                return left / right;
+        }
+    }
+
+    private boolean compare(Expr.Binary expr) {
+        double left = evaluateNumber(expr.left);
+        boolean leftMissed = missed;
+        Object leftValue = leftMissed ? takeMissed() : null;
+
+        double right = evaluateNumber(expr.right);
+        boolean rightMissed = missed;
+        Object rightValue = rightMissed ? takeMissed() : null;
+
+        if (leftMissed || rightMissed) {
+            return (boolean) binary(
+                expr.operator,
+                leftMissed ? leftValue : (Object) left,
+                rightMissed ? rightValue : (Object) right
+            );
+        }
+
+        switch (expr.operator.type) {
+            case GREATER: return left > right;
+            case GREATER_EQUAL: return left >= right;
+            case LESS: return left < right;
+            default: return left <= right;
+        }
+    }
+
+    private double negate(Expr.Unary expr) {
+        double right = evaluateNumber(expr.right);
+        if (missed) return unbox(unary(expr.operator, takeMissed()));
+
+        return -right;
+    }
+
+    private static boolean isArithmetic(Token operator) {
+        switch (operator.type) {
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isComparison(Token operator) {
+        switch (operator.type) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // end-region: unboxed evaluation
+
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
 
         return true;
     }
 
-    private boolean isEqual(Object left, Object right) {
+    static boolean isEqual(Object left, Object right) {
         if (left == null && right == null) return true;
         if (left == null) return false;
 
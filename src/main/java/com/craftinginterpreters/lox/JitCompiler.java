@@ -0,0 +1,560 @@
+package com.craftinginterpreters.lox;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/*
+ * Second tier for hot functions: turns the body of a Stmt.Function into a real JVM class
+ * implementing LoxCallable, so HotSpot can inline and optimize it like any other Java code.
+ *
+ * LoxFunction counts its calls and asks for a compiled version once it reaches its
+ * threshold (set with -Dlox.jit.threshold, 0 turns the JIT off). If anything goes wrong while
+ * compiling we just remember it and keep interpreting that function.
+ *
+ * The generated class is kept on the declaration (Stmt.Function.compiled), not in a registry
+ * here, and each one has a class loader of its own: once nothing runs the program anymore,
+ * its AST, its classes and their loaders can all be collected.
+ *
+ * The generated call() is what Interpreter would do, with the visitor dispatch and the
+ * Completion signals replaced by plain JVM jumps:
+ *
+ * - locals keep living in Environment objects with the Resolver's (depth, slot), so
+ *   closures are shared with interpreted code. Each nested block keeps its environment
+ *   in its own JVM local variable, so leaving a block (or breaking out of it) is free.
+ * - operators, globals and calls go through JitRuntime, which reports errors with the
+ *   same tokens the Interpreter would use.
+ * - tokens, literals and nested function declarations are handed to the instance in a
+ *   constants array.
+ * - arguments are pushed on the interpreter's argument stack like interpreted calls do.
+ *   Instead of a try/finally around every call, the whole body is covered by one handler
+ *   that puts the stack back where it was on entry when anything is thrown through it.
+ */
+class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static final String RUNTIME = Type.getInternalName(JitRuntime.class);
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    // 0-3 are this, interpreter, arguments and first
+    private static final int ARGUMENTS_TOP = 4;
+    private static final int FIRST_ENVIRONMENT = 5;
+
+    private static class Loader extends ClassLoader {
+        Loader() {
+            super(JitCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    // A generated class, and the constants every instance of it needs.
+    static class Compiled {
+        // the function couldn't be compiled, don't try again
+        static final Compiled FAILED = new Compiled(null, null);
+
+        final Constructor<?> constructor;
+        final Object[] constants;
+
+        Compiled(Constructor<?> constructor, Object[] constants) {
+            this.constructor = constructor;
+            this.constants = constants;
+        }
+    }
+
+    // Returns a compiled version of declaration closing over closure, or null if the
+    // function can't be compiled (in which case the caller should keep interpreting it).
+    static LoxCallable compile(Stmt.Function declaration, Environment closure) {
+        if (declaration.compiled == null) {
+            declaration.compiled = define(declaration);
+        }
+
+        Compiled function = declaration.compiled;
+        if (function == Compiled.FAILED) return null;
+
+        try {
+            return (LoxCallable) function.constructor.newInstance(closure, function.constants);
+        } catch (ReflectiveOperationException e) {
+            declaration.compiled = Compiled.FAILED;
+            return null;
+        }
+    }
+
+    private static Compiled define(Stmt.Function declaration) {
+        // alone in its loader, so the name only has to be a valid one
+        String name = "com.craftinginterpreters.lox.jit." + declaration.name.lexeme();
+
+        try {
+            JitCompiler compiler = new JitCompiler(declaration, name.replace('.', '/'));
+            Class<?> type = new Loader().define(name, compiler.generate());
+
+            return new Compiled(type.getConstructor(Object.class, Object[].class), compiler.constants.toArray());
+        } catch (RuntimeException | LinkageError | ReflectiveOperationException e) {
+            // e.g. the body is too large for a single JVM method
+            return Compiled.FAILED;
+        }
+    }
+
+    private final Stmt.Function declaration;
+    private final String className;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private final List<Label> loops = new ArrayList<>();
+
+    private MethodVisitor mv;
+    private int scopeDepth = 0;
+
+    private JitCompiler(Stmt.Function declaration, String className) {
+        this.declaration = declaration;
+        this.className = className;
+    }
+
+    private byte[] generate() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+            // everything we keep around is typed as Object, no need to load classes for this
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object",
+            new String[] { Type.getInternalName(LoxCallable.class) });
+
+        cw.visitField(ACC_PRIVATE | ACC_FINAL, "closure", OBJECT, null, null).visitEnd();
+        cw.visitField(ACC_PRIVATE | ACC_FINAL, "constants", "[" + OBJECT, null, null).visitEnd();
+
+        // constructor
+        mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + OBJECT + "[" + OBJECT + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, className, "closure", OBJECT);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitFieldInsn(PUTFIELD, className, "constants", "[" + OBJECT);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // arity()
+        mv = cw.visitMethod(ACC_PUBLIC, "arity", "()I", null, null);
+        mv.visitCode();
+        pushInt(declaration.params.size());
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // toString()
+        mv = cw.visitMethod(ACC_PUBLIC, "toString", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("<fn " + declaration.name.lexeme() + ">");
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // call(Interpreter, Object[], int)
+        mv = cw.visitMethod(ACC_PUBLIC, "call",
+            "(" + Type.getDescriptor(Interpreter.class) + "[" + OBJECT + "I)" + OBJECT, null, null);
+        mv.visitCode();
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, "closure", OBJECT);
+        pushInt(declaration.size);
+        pushInt(declaration.params.size());
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ILOAD, 3);
+        runtime("frame", "(" + OBJECT + "II[" + OBJECT + "I)" + OBJECT);
+        mv.visitVarInsn(ASTORE, FIRST_ENVIRONMENT);
+
+        pushInterpreter();
+        runtime("argumentsTop", "(" + OBJECT + ")I");
+        mv.visitVarInsn(ISTORE, ARGUMENTS_TOP);
+
+        Label bodyStart = new Label();
+        Label bodyEnd = new Label();
+        Label thrown = new Label();
+        mv.visitTryCatchBlock(bodyStart, bodyEnd, thrown, null);
+
+        mv.visitLabel(bodyStart);
+        compileAll(declaration.body);
+
+        mv.visitInsn(ACONST_NULL);
+        mv.visitInsn(ARETURN);
+        mv.visitLabel(bodyEnd);
+
+        // drop whatever the calls that were cut short had pushed, and rethrow
+        mv.visitLabel(thrown);
+        pushInterpreter();
+        mv.visitVarInsn(ILOAD, ARGUMENTS_TOP);
+        runtime("resetArguments", "(" + OBJECT + "I)V");
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+
+        return cw.toByteArray();
+    }
+
+    private void compileAll(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private void pushConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, "constants", "[" + OBJECT);
+        pushInt(index);
+        mv.visitInsn(AALOAD);
+    }
+
+    private void pushEnvironment() {
+        mv.visitVarInsn(ALOAD, FIRST_ENVIRONMENT + scopeDepth);
+    }
+
+    private void pushInterpreter() {
+        mv.visitVarInsn(ALOAD, 1);
+    }
+
+    private void runtime(String method, String descriptor) {
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, method, descriptor, false);
+    }
+
+    // binary helpers in JitRuntime all look like op(left, right, operator)
+    private void operator(String method, Token operator) {
+        pushConstant(operator);
+        runtime(method, "(" + OBJECT + OBJECT + OBJECT + ")" + OBJECT);
+    }
+
+    private void jumpIfFalse(Label target) {
+        runtime("isTruthy", "(" + OBJECT + ")Z");
+        mv.visitJumpInsn(IFEQ, target);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        pushEnvironment();
+        pushInt(stmt.size);
+        runtime("scope", "(" + OBJECT + "I)" + OBJECT);
+
+        scopeDepth++;
+        mv.visitVarInsn(ASTORE, FIRST_ENVIRONMENT + scopeDepth);
+        compileAll(stmt.statements);
+        scopeDepth--;
+
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        mv.visitInsn(POP);
+
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        pushEnvironment();
+        pushInt(stmt.slot);
+
+        pushConstant(stmt);
+        pushEnvironment();
+        runtime("closure", "(" + OBJECT + OBJECT + ")" + OBJECT);
+
+        runtime("define", "(" + OBJECT + "I" + OBJECT + ")V");
+
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        Label elseBranch = new Label();
+        Label end = new Label();
+
+        compile(stmt.condition);
+        jumpIfFalse(elseBranch);
+
+        compile(stmt.thenBranch);
+        mv.visitJumpInsn(GOTO, end);
+
+        mv.visitLabel(elseBranch);
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+
+        mv.visitLabel(end);
+
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        runtime("print", "(" + OBJECT + ")V");
+
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) {
+            // hands back Interpreter.PENDING_TAIL_CALL when the call is left to LoxFunction
+            compileCall((Expr.Call) stmt.value, "tailCall");
+        } else if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            mv.visitInsn(ACONST_NULL);
+        }
+
+        mv.visitInsn(ARETURN);
+
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        pushEnvironment();
+        pushInt(stmt.slot);
+
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            mv.visitInsn(ACONST_NULL);
+        }
+
+        runtime("define", "(" + OBJECT + "I" + OBJECT + ")V");
+
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Label start = new Label();
+        Label end = new Label();
+
+        mv.visitLabel(start);
+        compile(stmt.condition);
+        jumpIfFalse(end);
+
+        loops.add(end);
+        compile(stmt.body);
+        loops.remove(loops.size() - 1);
+
+        mv.visitJumpInsn(GOTO, start);
+        mv.visitLabel(end);
+
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        // the Resolver already made sure we're inside a loop of this function
+        mv.visitJumpInsn(GOTO, loops.get(loops.size() - 1));
+
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        if (expr.depth == -1) {
+            pushInterpreter();
+            pushConstant(expr.name);
+            compile(expr.value);
+            runtime("assignGlobal", "(" + OBJECT + OBJECT + OBJECT + ")" + OBJECT);
+        } else {
+            pushEnvironment();
+            pushInt(expr.depth);
+            pushInt(expr.slot);
+            compile(expr.value);
+            runtime("assignAt", "(" + OBJECT + "II" + OBJECT + ")" + OBJECT);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+
+        if (expr.operator.type == TokenType.COMMA) {
+            mv.visitInsn(POP);
+            compile(expr.right);
+            return null;
+        }
+
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case GREATER: operator("greater", expr.operator); break;
+            case GREATER_EQUAL: operator("greaterEqual", expr.operator); break;
+            case LESS: operator("less", expr.operator); break;
+            case LESS_EQUAL: operator("lessEqual", expr.operator); break;
+            case MINUS: operator("subtract", expr.operator); break;
+            case BANG_EQUAL: operator("notEqual", expr.operator); break;
+            case EQUAL_EQUAL: operator("equal", expr.operator); break;
+            case PLUS: operator("add", expr.operator); break;
+            case SLASH: operator("divide", expr.operator); break;
+            case STAR: operator("multiply", expr.operator); break;
+            default:
+                mv.visitInsn(POP2);
+                mv.visitInsn(ACONST_NULL);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compileCall(expr, "call");
+
+        return null;
+    }
+
+    private void compileCall(Expr.Call expr, String method) {
+        compile(expr.callee);
+
+        // arguments go on the interpreter's argument stack, like interpreted calls do
+        for (Expr argument : expr.arguments) {
+            pushInterpreter();
+            compile(argument);
+            runtime("pushArgument", "(" + OBJECT + OBJECT + ")V");
+        }
+
+        pushInterpreter();
+        pushInt(expr.arguments.size());
+        pushConstant(expr.paren);
+        runtime(method, "(" + OBJECT + OBJECT + "I" + OBJECT + ")" + OBJECT);
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        Label falsy = new Label();
+        Label end = new Label();
+
+        compile(expr.conditional);
+        jumpIfFalse(falsy);
+
+        compile(expr.truthy);
+        mv.visitJumpInsn(GOTO, end);
+
+        mv.visitLabel(falsy);
+        compile(expr.falsy);
+
+        mv.visitLabel(end);
+
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            mv.visitInsn(ACONST_NULL);
+        } else {
+            pushConstant(expr.value);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        Label end = new Label();
+
+        compile(expr.left);
+
+        // short-circuiting: keep the left value as the result
+        mv.visitInsn(DUP);
+        runtime("isTruthy", "(" + OBJECT + ")Z");
+        mv.visitJumpInsn(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+
+        mv.visitInsn(POP);
+        compile(expr.right);
+
+        mv.visitLabel(end);
+
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case BANG:
+                runtime("not", "(" + OBJECT + ")" + OBJECT);
+                break;
+            case MINUS:
+                pushConstant(expr.operator);
+                runtime("negate", "(" + OBJECT + OBJECT + ")" + OBJECT);
+                break;
+            default:
+                mv.visitInsn(POP);
+                mv.visitInsn(ACONST_NULL);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth == -1) {
+            pushInterpreter();
+            pushConstant(expr.name);
+            runtime("getGlobal", "(" + OBJECT + OBJECT + ")" + OBJECT);
+        } else {
+            pushEnvironment();
+            pushInt(expr.depth);
+            pushInt(expr.slot);
+            runtime("getAt", "(" + OBJECT + "II)" + OBJECT);
+        }
+
+        return null;
+    }
+}
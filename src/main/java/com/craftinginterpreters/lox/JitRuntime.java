@@ -0,0 +1,148 @@
+package com.craftinginterpreters.lox;
+
+// Everything code generated by JitCompiler calls into.
+//
+// Generated classes are defined by their own class loader, which puts them in a different
+// runtime package: they can't touch package-private classes like Environment or Token.
+// So this class is public, takes and returns plain Objects, and does the casting for them.
+public final class JitRuntime {
+
+    private JitRuntime() {
+    }
+
+    public static Object frame(Object closure, int size, int arity, Object[] arguments, int first) {
+        Environment environment = new Environment((Environment) closure, size);
+        for (int i = 0; i < arity; i++) {
+            environment.define(i, arguments[first + i]);
+        }
+
+        return environment;
+    }
+
+    public static Object scope(Object enclosing, int size) {
+        return new Environment((Environment) enclosing, size);
+    }
+
+    public static void define(Object environment, int slot, Object value) {
+        ((Environment) environment).define(slot, value);
+    }
+
+    public static Object getAt(Object environment, int distance, int slot) {
+        return ((Environment) environment).getAt(distance, slot);
+    }
+
+    public static Object assignAt(Object environment, int distance, int slot, Object value) {
+        ((Environment) environment).assignAt(distance, slot, value);
+        return value;
+    }
+
+    public static Object getGlobal(Object interpreter, Object name) {
+        return ((Interpreter) interpreter).globals.get((Token) name);
+    }
+
+    public static Object assignGlobal(Object interpreter, Object name, Object value) {
+        ((Interpreter) interpreter).globals.assign((Token) name, value);
+        return value;
+    }
+
+    public static Object closure(Object declaration, Object environment) {
+        return new LoxFunction((Stmt.Function) declaration, (Environment) environment);
+    }
+
+    public static int argumentsTop(Object interpreter) {
+        return ((Interpreter) interpreter).argumentsTop();
+    }
+
+    public static void resetArguments(Object interpreter, int top) {
+        ((Interpreter) interpreter).resetArguments(top);
+    }
+
+    public static void pushArgument(Object interpreter, Object value) {
+        ((Interpreter) interpreter).pushArgument(value);
+    }
+
+    public static Object call(Object callee, Object interpreter, int argumentCount, Object paren) {
+        return ((Interpreter) interpreter).call((Token) paren, callee, argumentCount);
+    }
+
+    public static Object tailCall(Object callee, Object interpreter, int argumentCount, Object paren) {
+        return ((Interpreter) interpreter).tailCall((Token) paren, callee, argumentCount);
+    }
+
+    public static void print(Object value) {
+        System.out.println(Interpreter.stringify(value));
+    }
+
+    public static boolean isTruthy(Object value) {
+        return Interpreter.isTruthy(value);
+    }
+
+    public static Object not(Object right) {
+        return !Interpreter.isTruthy(right);
+    }
+
+    public static Object negate(Object right, Object operator) {
+        Interpreter.checkNumberOperand((Token) operator, right);
+        return -(double) right;
+    }
+
+    public static Object equal(Object left, Object right, Object operator) {
+        return Interpreter.isEqual(left, right);
+    }
+
+    public static Object notEqual(Object left, Object right, Object operator) {
+        return !Interpreter.isEqual(left, right);
+    }
+
+    public static Object greater(Object left, Object right, Object operator) {
+        Interpreter.checkNumberOperands((Token) operator, left, right);
+        return (double) left > (double) right;
+    }
+
+    public static Object greaterEqual(Object left, Object right, Object operator) {
+        Interpreter.checkNumberOperands((Token) operator, left, right);
+        return (double) left >= (double) right;
+    }
+
+    public static Object less(Object left, Object right, Object operator) {
+        Interpreter.checkNumberOperands((Token) operator, left, right);
+        return (double) left < (double) right;
+    }
+
+    public static Object lessEqual(Object left, Object right, Object operator) {
+        Interpreter.checkNumberOperands((Token) operator, left, right);
+        return (double) left <= (double) right;
+    }
+
+    public static Object add(Object left, Object right, Object operator) {
+        if (left instanceof Double && right instanceof Double) {
+            return (double) left + (double) right;
+        }
+
+        if (left instanceof String) {
+            return (String) left + Interpreter.stringify(right);
+        }
+
+        if (right instanceof String) {
+            return Interpreter.stringify(left) + (String) right;
+        }
+
+        throw new RuntimeError((Token) operator, "Operands must be two strings or two numbers");
+    }
+
+    public static Object subtract(Object left, Object right, Object operator) {
+        Interpreter.checkNumberOperands((Token) operator, left, right);
+        return (double) left - (double) right;
+    }
+
+    public static Object multiply(Object left, Object right, Object operator) {
+        Interpreter.checkNumberOperands((Token) operator, left, right);
+        return (double) left * (double) right;
+    }
+
+    public static Object divide(Object left, Object right, Object operator) {
+        Interpreter.checkDivideByZero((Token) operator, right);
+        Interpreter.checkNumberOperands((Token) operator, left, right);
+        return (double) left / (double) right;
+    }
+}
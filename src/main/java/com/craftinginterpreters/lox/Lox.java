@@ -3,36 +3,143 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class Lox {
 
+    // What actually runs the parsed program, picked with a flag on the command line.
+    enum Backend {
+        INTERPRETER,
+        VM,    // --vm:    compile to bytecode and run on the stack VM
+        NODES  // --nodes: self-specializing executable AST
+    }
+
     private static final Interpreter interpreter = new Interpreter();
+    private static final VM vm = new VM(interpreter);
+    private static final NodeInterpreter nodeInterpreter = new NodeInterpreter(interpreter);
+
+    static Backend backend = Backend.INTERPRETER;
+
+    // --stream: run every top-level statement as soon as it's parsed, instead of parsing
+    // the whole program first
+    static boolean streaming = false;
+
+    // --parallel: use several threads for the front end of big scripts
+    static boolean parallel = false;
+
+    // -Dlox.ast.cache=<MB>: keep the programs run by runFile, parsed and resolved, to run them
+    // again without the front end. Off (0) by default: a run of jlox only runs one file.
+    private static final AstCache cache = astCache(Integer.getInteger("lox.ast.cache", 0));
 
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
 
     public static void main(String[] args) throws IOException {
+        while (args.length > 0 && args[0].startsWith("--")) {
+            if (args[0].equals("--vm")) {
+                backend = Backend.VM;
+            } else if (args[0].equals("--nodes")) {
+                backend = Backend.NODES;
+            } else if (args[0].equals("--stream")) {
+                streaming = true;
+            } else if (args[0].equals("--parallel")) {
+                parallel = true;
+            } else {
+                break;
+            }
+
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
         if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+            System.out.println("Usage: jlox [--vm | --nodes] [--stream] [--parallel] [script]");
             System.exit(64);
         } else if (args.length == 1) {
             runFile(args[0]);
+
+            if (hadError) System.exit(65);
+            if (hadRuntimeError) System.exit(70);
         } else {
             runPrompt();
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
+    private static AstCache astCache(int megabytes) {
+        if (megabytes <= 0) return null;
+        return new AstCache(megabytes * 1024L * 1024L);
+    }
+
+    // Callers check hadError / hadRuntimeError afterwards, see main.
+    static void runFile(String path) throws IOException {
+        Path file = Paths.get(path);
+        ByteBuffer bytes = map(file);
+
+        // --stream never has the whole program at once, there's nothing to keep
+        if (cache == null || streaming) {
+            run(new Scanner(decode(file, bytes)));
+            return;
+        }
+
+        // the key is hashed from the bytes, so a hit doesn't even decode them
+        ByteBuffer key = AstCache.key(bytes);
+        List<Stmt> statements = cache.get(key);
+
+        if (statements == null) {
+            CharBuffer source = decode(file, bytes);
+            TokenBuffer tokens = scan(new Scanner(source));
+
+            statements = compile(tokens);
+            if (statements == null) return;
+
+            cache.put(key, statements, AstCache.estimateSize(tokens.size(), source.capacity()));
+        }
+
+        execute(statements);
+    }
+
+    // The file is mapped rather than read, and decoded straight into the buffer the Scanner
+    // works on, so that buffer is the only copy of the source on the heap. Scripts are UTF-8
+    // unless -Dlox.charset says otherwise; malformed input is replaced, not an error.
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static CharBuffer decode(Path path, ByteBuffer bytes) throws IOException {
+        CharsetDecoder decoder = Charset.forName(System.getProperty("lox.charset", "UTF-8"))
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        int size = bytes.remaining();
+
+        // never less than the chars it decodes to: no resizing while decoding
+        long capacity = (long) Math.ceil(size * (double) decoder.maxCharsPerByte());
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IOException(path + " is too large: " + size + " bytes");
+        }
+
+        CharBuffer chars = CharBuffer.allocate((int) capacity);
 
-        run(new String(bytes, Charset.defaultCharset()));
+        CoderResult result = decoder.decode(bytes.duplicate(), chars, true);
+        if (result.isUnderflow()) result = decoder.flush(chars);
+        if (!result.isUnderflow()) result.throwException();
 
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        chars.flip();
+        return chars;
     }
 
     private static void runPrompt() throws IOException {
@@ -41,20 +148,81 @@ public class Lox {
 
         for(;;) {
             System.out.print("> ");
-            run(reader.readLine());
+            run(new Scanner(reader.readLine()));
             hadError = false;
+            hadRuntimeError = false;
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+    private static void run(Scanner scanner) {
+        TokenBuffer tokens = scan(scanner);
+
+        if (streaming) {
+            Parser parser = new Parser(tokens);
 
-        if (hadError) return;
+            // Statements that already ran can be collected while the rest is parsed. Once
+            // there's a syntax error nothing else runs, but the rest is still parsed for
+            // its errors; a runtime error stops everything, as usual.
+            while (parser.hasNext() && !hadRuntimeError) {
+                Stmt statement = parser.next();
+                if (hadError) continue;
 
-        interpreter.interpreter(statements);
+                List<Stmt> statements = analyze(Collections.singletonList(statement));
+                if (statements == null) continue;
+
+                execute(statements);
+            }
+
+            return;
+        }
+
+        List<Stmt> statements = compile(tokens);
+        if (statements == null) return;
+
+        execute(statements);
+    }
+
+    // tokens are scanned as the parser gets to them, never all at once, unless they're
+    // scanned in parallel up front; then several parsers may read them at once
+    private static TokenBuffer scan(Scanner scanner) {
+        return parallel ? scanner.scanTokensInParallel() : scanner.tokens().singleReader();
+    }
+
+    // The whole program, parsed, resolved and optimized: ready for any backend. null when
+    // it has errors, which have been reported.
+    private static List<Stmt> compile(TokenBuffer tokens) {
+        List<Stmt> statements = parallel ? ParallelParser.parse(tokens) : new Parser(tokens).parse();
+        if (hadError) return null;
+
+        return analyze(statements);
+    }
+
+    // Top-level statements share the globals, so this can be called one statement at a time.
+    private static List<Stmt> analyze(List<Stmt> statements) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+
+        if (hadError) return null;
+
+        return new Optimizer().optimize(statements);
+    }
+
+    private static void execute(List<Stmt> statements) {
+        switch (backend) {
+            case VM:
+                BytecodeCompiler compiler = new BytecodeCompiler();
+                CompiledFunction script = compiler.compile(statements);
+
+                if (hadError) return;
+
+                vm.run(script);
+                break;
+            case NODES:
+                nodeInterpreter.run(statements);
+                break;
+            default:
+                interpreter.interpreter(statements);
+        }
     }
 
     static void error(int line, String message) {
@@ -65,7 +233,7 @@ public class Lox {
         if (token.type == TokenType.EOF) {
             report(token.line, " at the end", message);
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            report(token.line, " at '" + token.lexeme() + "'", message);
         }
     }
 
@@ -1,10 +1,12 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 public interface LoxCallable {
 
     int arity();
 
-    Object call(Interpreter interpreter, List<Object> arguments);
+    // The arguments are arguments[first] up to arguments[first + arity() - 1].
+    //
+    // The array is the caller's argument stack (see Interpreter.pushArgument), not a copy:
+    // it gets reused by the next call, so read the arguments before calling anything else.
+    Object call(Interpreter interpreter, Object[] arguments, int first);
 }
@@ -1,12 +1,16 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 public class LoxFunction implements LoxCallable {
 
+    private static final int JIT_THRESHOLD = Integer.getInteger("lox.jit.threshold", 1000);
+
     private final Stmt.Function declaration;
     private final Environment closure;
 
+    // once this function got hot enough, see JitCompiler
+    private LoxCallable compiled;
+    private int calls = 0;
+
     LoxFunction(Stmt.Function declaration, Environment closure) {
         this.closure = closure;
         this.declaration = declaration;
@@ -17,25 +21,62 @@ public class LoxFunction implements LoxCallable {
         return declaration.params.size();
     }
 
+    // Runs this function and then, as long as it ends in `return f(...)` with f another
+    // LoxFunction, runs f right here instead of nesting a call for it (see
+    // Interpreter.deferTailCall). A self tail call also reuses the environment, unless
+    // a closure might have kept it.
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    public Object call(Interpreter interpreter, Object[] arguments, int first) {
+        LoxFunction function = this;
+        Environment environment = null;
+
+        for (;;) {
+            if (function.compiled == null && ++function.calls == JIT_THRESHOLD) {
+                function.compiled = JitCompiler.compile(function.declaration, function.closure);
+            }
+
+            if (function.compiled != null) {
+                Object result = function.compiled.call(interpreter, arguments, first);
+                if (result != Interpreter.PENDING_TAIL_CALL) return result;
+
+                environment = null;
+            } else {
+                environment = function.bind(environment, arguments, first);
+
+                Interpreter.Completion completion = interpreter.executeBlock(function.declaration.body, environment);
+                if (completion == Interpreter.Completion.RETURN) {
+                    return interpreter.takeReturnValue();
+                }
+
+                if (completion != Interpreter.Completion.TAIL_CALL) return null;
+            }
+
+            arguments = interpreter.arguments();
+            first = interpreter.tailFirst();
+            LoxFunction callee = interpreter.takeTailCallee();
+
+            if (callee != function || function.declaration.hasClosures) environment = null;
+            function = callee;
         }
+    }
 
-        try {
+    // Parameters occupy the first slots of the call environment, see Resolver. When an
+    // environment is reused the other slots keep stale values, which is fine: the
+    // Resolver only lets a local be read after its declaration has set it again.
+    private Environment bind(Environment environment, Object[] arguments, int first) {
+        if (environment == null) {
+            environment = new Environment(closure, declaration.size);
+        }
 
-            interpreter.executeBlock(declaration.body, environment);
-        } catch(Return returnValue) {
-            return returnValue.value;
+        for (int i = 0; i < declaration.params.size(); i++) {
+            environment.define(i, arguments[first + i]);
         }
 
-        return null;
+        return environment;
     }
 
     @Override
     public String toString() {
-        return "<fn " + declaration.name.lexeme + ">";
+        return "<fn " + declaration.name.lexeme() + ">";
     }
 }
@@ -0,0 +1,745 @@
+package com.craftinginterpreters.lox;
+
+/*
+ * Executable tree used by NodeInterpreter.
+ *
+ * Unlike Expr / Stmt, every node knows how to execute itself, and some of them rewrite
+ * themselves into a faster variant after looking at the values they actually get:
+ *
+ *   UninitializedBinary --(two numbers)--> NumberBinary --(anything else)--> GenericBinary
+ *                       --(string + ...)-> StringConcat --(anything else)--> GenericBinary
+ *                       --(anything else)---------------------------------> GenericBinary
+ *
+ * and the same for unary minus and logical operators. A specialized node only handles
+ * the types it was created for; on a type miss it replaces itself with the generic node
+ * (which never rewrites again) and finishes the operation there, so operands are never
+ * evaluated twice.
+ *
+ * To be able to replace itself, a node knows its parent, and every parent knows how to
+ * swap one of its children (see replaceChild).
+ *
+ * A node can be rewritten while it's still running: a recursive call made from one of its
+ * operands (fib(n - 1) + fib(n - 2)) executes the same node again, and may rewrite it
+ * before the outer activation gets to its operator. The outer one is then left with a node
+ * that's no longer in the tree, and must not rewrite it again: the new node would adopt
+ * children that already belong to the live one. So a replaced node remembers its
+ * replacement, and a rewrite on a replaced node finishes on the replacement instead.
+ */
+abstract class Node {
+    Node parent;
+
+    <T extends Node> T adopt(T child) {
+        if (child != null) child.parent = this;
+        return child;
+    }
+
+    void replaceChild(ExprNode oldChild, ExprNode newChild) {
+        throw new IllegalStateException("Node has no children to replace.");
+    }
+
+    abstract static class ExprNode extends Node {
+        // the node that took this one's place in the tree, null while it's still there
+        ExprNode replacement;
+
+        abstract Object execute(Environment environment);
+
+        <T extends ExprNode> T replace(T newNode) {
+            replacement = newNode;
+            parent.replaceChild(this, newNode);
+            newNode.parent = parent;
+
+            return newNode;
+        }
+    }
+
+    // Statements report how they finished (see Interpreter.Completion) instead of
+    // throwing on `return` and `break`.
+    abstract static class StmtNode extends Node {
+        abstract Interpreter.Completion execute(Environment environment);
+    }
+
+    // region: expressions
+
+    static class Literal extends ExprNode {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return value;
+        }
+    }
+
+    static class LocalVariable extends ExprNode {
+        final int depth;
+        final int slot;
+
+        LocalVariable(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return environment.getAt(depth, slot);
+        }
+    }
+
+    static class GlobalVariable extends ExprNode {
+        final Token name;
+        final Environment globals;
+
+        GlobalVariable(Token name, Environment globals) {
+            this.name = name;
+            this.globals = globals;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return globals.get(name);
+        }
+    }
+
+    static class LocalAssign extends ExprNode {
+        final int depth;
+        final int slot;
+        ExprNode value;
+
+        LocalAssign(int depth, int slot, ExprNode value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object result = value.execute(environment);
+            environment.assignAt(depth, slot, result);
+
+            return result;
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (value == oldChild) value = newChild;
+        }
+    }
+
+    static class GlobalAssign extends ExprNode {
+        final Token name;
+        final Environment globals;
+        ExprNode value;
+
+        GlobalAssign(Token name, Environment globals, ExprNode value) {
+            this.name = name;
+            this.globals = globals;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object result = value.execute(environment);
+            globals.assign(name, result);
+
+            return result;
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (value == oldChild) value = newChild;
+        }
+    }
+
+    // the separator (comma) operator
+    static class Sequence extends ExprNode {
+        ExprNode left;
+        ExprNode right;
+
+        Sequence(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            left.execute(environment);
+            return right.execute(environment);
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (left == oldChild) left = newChild;
+            if (right == oldChild) right = newChild;
+        }
+    }
+
+    abstract static class Binary extends ExprNode {
+        final Token operator;
+        ExprNode left;
+        ExprNode right;
+
+        Binary(Token operator, ExprNode left, ExprNode right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            Object rightValue = right.execute(environment);
+
+            return apply(leftValue, rightValue);
+        }
+
+        // the operation itself, on operands that are already evaluated
+        abstract Object apply(Object leftValue, Object rightValue);
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (left == oldChild) left = newChild;
+            if (right == oldChild) right = newChild;
+        }
+
+        Object deoptimize(Object leftValue, Object rightValue) {
+            if (replacement != null) return ((Binary) replacement).apply(leftValue, rightValue);
+
+            return replace(new GenericBinary(operator, left, right)).apply(leftValue, rightValue);
+        }
+    }
+
+    // Hasn't run yet, picks a specialization based on the first operands it sees.
+    static class UninitializedBinary extends Binary {
+        UninitializedBinary(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            if (replacement != null) return ((Binary) replacement).apply(leftValue, rightValue);
+
+            Binary specialized;
+
+            if (leftValue instanceof Double && rightValue instanceof Double && NumberBinary.handles(operator)) {
+                specialized = new NumberBinary(operator, left, right);
+            } else if (leftValue instanceof String && operator.type == TokenType.PLUS) {
+                specialized = new StringConcat(operator, left, right);
+            } else {
+                specialized = new GenericBinary(operator, left, right);
+            }
+
+            return replace(specialized).apply(leftValue, rightValue);
+        }
+    }
+
+    // Arithmetic and comparison on two numbers.
+    static class NumberBinary extends Binary {
+        NumberBinary(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        static boolean handles(Token operator) {
+            switch (operator.type) {
+                case PLUS:
+                case MINUS:
+                case STAR:
+                case SLASH:
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            if (!(leftValue instanceof Double) || !(rightValue instanceof Double)) {
+                return deoptimize(leftValue, rightValue);
+            }
+
+            double l = (double) leftValue;
+            double r = (double) rightValue;
+
+            switch (operator.type) {
+                case PLUS: return l + r;
+                case MINUS: return l - r;
+                case STAR: return l * r;
+                case SLASH:
+                    if ((int) r == 0) throw new RuntimeError(operator, "Cnanot divide by zero");
+                    return l / r;
+                case GREATER: return l > r;
+                case GREATER_EQUAL: return l >= r;
+                case LESS: return l < r;
+                case LESS_EQUAL: return l <= r;
+            }
+
+            return null;
+        }
+    }
+
+    // "+" with a string on the left, whatever is on the right gets stringified.
+    static class StringConcat extends Binary {
+        StringConcat(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            if (!(leftValue instanceof String)) {
+                return deoptimize(leftValue, rightValue);
+            }
+
+            return (String) leftValue + Interpreter.stringify(rightValue);
+        }
+    }
+
+    // Handles everything the Interpreter does, and never changes again.
+    static class GenericBinary extends Binary {
+        GenericBinary(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            return Interpreter.binary(operator, leftValue, rightValue);
+        }
+    }
+
+    abstract static class Unary extends ExprNode {
+        final Token operator;
+        ExprNode right;
+
+        Unary(Token operator, ExprNode right) {
+            this.operator = operator;
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return apply(right.execute(environment));
+        }
+
+        abstract Object apply(Object value);
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (right == oldChild) right = newChild;
+        }
+    }
+
+    static class UninitializedUnary extends Unary {
+        UninitializedUnary(Token operator, ExprNode right) {
+            super(operator, right);
+        }
+
+        @Override
+        Object apply(Object value) {
+            if (replacement != null) return ((Unary) replacement).apply(value);
+
+            Unary specialized;
+            if (operator.type == TokenType.MINUS && value instanceof Double) {
+                specialized = new NegateNumber(operator, right);
+            } else {
+                specialized = new GenericUnary(operator, right);
+            }
+
+            return replace(specialized).apply(value);
+        }
+    }
+
+    static class NegateNumber extends Unary {
+        NegateNumber(Token operator, ExprNode right) {
+            super(operator, right);
+        }
+
+        @Override
+        Object apply(Object value) {
+            if (!(value instanceof Double)) {
+                if (replacement != null) return ((Unary) replacement).apply(value);
+
+                return replace(new GenericUnary(operator, right)).apply(value);
+            }
+
+            return -(double) value;
+        }
+    }
+
+    static class GenericUnary extends Unary {
+        GenericUnary(Token operator, ExprNode right) {
+            super(operator, right);
+        }
+
+        @Override
+        Object apply(Object value) {
+            return Interpreter.unary(operator, value);
+        }
+    }
+
+    abstract static class Logical extends ExprNode {
+        final Token operator;
+        ExprNode left;
+        ExprNode right;
+
+        Logical(Token operator, ExprNode left, ExprNode right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            Boolean truthy = truthiness(leftValue);
+
+            // on a miss the replacement has to finish with the value we already have
+            if (truthy == null) {
+                if (replacement != null) return ((Logical) replacement).finish(leftValue, environment);
+
+                return replace(new GenericLogical(operator, left, right)).finish(leftValue, environment);
+            }
+
+            if (operator.type == TokenType.OR ? truthy : !truthy) return leftValue;
+
+            return right.execute(environment);
+        }
+
+        // null if this node can't handle this kind of value
+        abstract Boolean truthiness(Object value);
+
+        Object finish(Object leftValue, Environment environment) {
+            boolean truthy = Interpreter.isTruthy(leftValue);
+            if (operator.type == TokenType.OR ? truthy : !truthy) return leftValue;
+
+            return right.execute(environment);
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (left == oldChild) left = newChild;
+            if (right == oldChild) right = newChild;
+        }
+    }
+
+    static class UninitializedLogical extends Logical {
+        UninitializedLogical(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            if (replacement != null) return ((Logical) replacement).finish(leftValue, environment);
+
+            Logical specialized = leftValue instanceof Boolean
+                ? new BooleanLogical(operator, left, right)
+                : new GenericLogical(operator, left, right);
+
+            return replace(specialized).finish(leftValue, environment);
+        }
+
+        @Override
+        Boolean truthiness(Object value) {
+            return null;
+        }
+    }
+
+    // The usual case in conditions: the left side is a comparison, so a Boolean.
+    static class BooleanLogical extends Logical {
+        BooleanLogical(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Boolean truthiness(Object value) {
+            return value instanceof Boolean ? (Boolean) value : null;
+        }
+    }
+
+    static class GenericLogical extends Logical {
+        GenericLogical(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Boolean truthiness(Object value) {
+            return Interpreter.isTruthy(value);
+        }
+    }
+
+    static class Ternary extends ExprNode {
+        ExprNode conditional;
+        ExprNode truthy;
+        ExprNode falsy;
+
+        Ternary(ExprNode conditional, ExprNode truthy, ExprNode falsy) {
+            this.conditional = adopt(conditional);
+            this.truthy = adopt(truthy);
+            this.falsy = adopt(falsy);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            if (Interpreter.isTruthy(conditional.execute(environment))) {
+                return truthy.execute(environment);
+            }
+
+            return falsy.execute(environment);
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (conditional == oldChild) conditional = newChild;
+            if (truthy == oldChild) truthy = newChild;
+            if (falsy == oldChild) falsy = newChild;
+        }
+    }
+
+    static class Call extends ExprNode {
+        final Interpreter interpreter;
+        final Token paren;
+        ExprNode callee;
+        final ExprNode[] arguments;
+
+        Call(Interpreter interpreter, Token paren, ExprNode callee, ExprNode[] arguments) {
+            this.interpreter = interpreter;
+            this.paren = paren;
+            this.callee = adopt(callee);
+            this.arguments = arguments;
+
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object function = callee.execute(environment);
+
+            int first = interpreter.argumentsTop();
+            try {
+                for (ExprNode argument : arguments) {
+                    interpreter.pushArgument(argument.execute(environment));
+                }
+
+                return interpreter.call(paren, function, arguments.length);
+            } finally {
+                interpreter.resetArguments(first);
+            }
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (callee == oldChild) callee = newChild;
+
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] == oldChild) arguments[i] = newChild;
+            }
+        }
+    }
+
+    // end-region: expressions
+
+    // region: statements
+
+    static class Expression extends StmtNode {
+        ExprNode expression;
+
+        Expression(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Interpreter.Completion execute(Environment environment) {
+            expression.execute(environment);
+            return Interpreter.Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (expression == oldChild) expression = newChild;
+        }
+    }
+
+    static class Print extends StmtNode {
+        ExprNode expression;
+
+        Print(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Interpreter.Completion execute(Environment environment) {
+            System.out.println(Interpreter.stringify(expression.execute(environment)));
+            return Interpreter.Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (expression == oldChild) expression = newChild;
+        }
+    }
+
+    // var and fun declarations, value is evaluated and stored in the slot (or global)
+    static class Define extends StmtNode {
+        final Token name;
+        final int slot;
+        ExprNode value;
+
+        Define(Token name, int slot, ExprNode value) {
+            this.name = name;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Interpreter.Completion execute(Environment environment) {
+            if (slot == -1) {
+                environment.define(name.symbol(), value.execute(environment));
+            } else {
+                environment.define(slot, value.execute(environment));
+            }
+
+            return Interpreter.Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (value == oldChild) value = newChild;
+        }
+    }
+
+    // Creates the runtime function, closing over the current environment.
+    static class Closure extends ExprNode {
+        final Stmt.Function declaration;
+        final StmtNode[] body;
+
+        Closure(Stmt.Function declaration, StmtNode[] body) {
+            this.declaration = declaration;
+            this.body = body;
+
+            for (StmtNode statement : body) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return new NodeFunction(this, environment);
+        }
+    }
+
+    static class If extends StmtNode {
+        ExprNode condition;
+        final StmtNode thenBranch;
+        final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        Interpreter.Completion execute(Environment environment) {
+            if (Interpreter.isTruthy(condition.execute(environment))) {
+                return thenBranch.execute(environment);
+            } else if (elseBranch != null) {
+                return elseBranch.execute(environment);
+            }
+
+            return Interpreter.Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (condition == oldChild) condition = newChild;
+        }
+    }
+
+    static class While extends StmtNode {
+        ExprNode condition;
+        final StmtNode body;
+
+        While(ExprNode condition, StmtNode body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        Interpreter.Completion execute(Environment environment) {
+            while (Interpreter.isTruthy(condition.execute(environment))) {
+                Interpreter.Completion completion = body.execute(environment);
+
+                if (completion == Interpreter.Completion.BREAK) break;
+                if (completion == Interpreter.Completion.RETURN) return completion;
+            }
+
+            return Interpreter.Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (condition == oldChild) condition = newChild;
+        }
+    }
+
+    static class Block extends StmtNode {
+        final int size;
+        final StmtNode[] statements;
+
+        Block(int size, StmtNode[] statements) {
+            this.size = size;
+            this.statements = statements;
+
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        Interpreter.Completion execute(Environment environment) {
+            Environment inner = new Environment(environment, size);
+            for (StmtNode statement : statements) {
+                Interpreter.Completion completion = statement.execute(inner);
+                if (completion != Interpreter.Completion.NORMAL) return completion;
+            }
+
+            return Interpreter.Completion.NORMAL;
+        }
+    }
+
+    static class ReturnStmt extends StmtNode {
+        final Interpreter interpreter;
+        ExprNode value;
+
+        ReturnStmt(Interpreter interpreter, ExprNode value) {
+            this.interpreter = interpreter;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Interpreter.Completion execute(Environment environment) {
+            return interpreter.returning(value == null ? null : value.execute(environment));
+        }
+
+        @Override
+        void replaceChild(ExprNode oldChild, ExprNode newChild) {
+            if (value == oldChild) value = newChild;
+        }
+    }
+
+    static class BreakStmt extends StmtNode {
+        @Override
+        Interpreter.Completion execute(Environment environment) {
+            return Interpreter.Completion.BREAK;
+        }
+    }
+
+    // end-region: statements
+}
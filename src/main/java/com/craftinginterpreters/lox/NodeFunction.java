@@ -0,0 +1,42 @@
+package com.craftinginterpreters.lox;
+
+// Runtime value of a function declared in code running on the NodeInterpreter.
+//
+// The body nodes are shared by every closure created from the same declaration, so
+// whatever they specialized into is kept across calls and across closures.
+class NodeFunction implements LoxCallable {
+
+    private final Node.Closure function;
+    private final Environment closure;
+
+    NodeFunction(Node.Closure function, Environment closure) {
+        this.function = function;
+        this.closure = closure;
+    }
+
+    @Override
+    public int arity() {
+        return function.declaration.params.size();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments, int first) {
+        Environment environment = new Environment(closure, function.declaration.size);
+        for (int i = 0; i < function.declaration.params.size(); i++) {
+            environment.define(i, arguments[first + i]);
+        }
+
+        for (Node.StmtNode statement : function.body) {
+            if (statement.execute(environment) == Interpreter.Completion.RETURN) {
+                return interpreter.takeReturnValue();
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + function.declaration.name.lexeme() + ">";
+    }
+}
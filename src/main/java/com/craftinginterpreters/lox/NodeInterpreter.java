@@ -0,0 +1,163 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/*
+ * Execution mode built on self-specializing nodes (see Node), selected with --nodes.
+ *
+ * The resolved AST is first turned into a tree of Nodes, which is then executed. All
+ * the interesting work happens in the nodes themselves, this class is only the builder
+ * and the entry point.
+ *
+ * Globals and native functions are shared with the Interpreter, like the VM does.
+ */
+class NodeInterpreter implements Expr.Visitor<Node.ExprNode>, Stmt.Visitor<Node.StmtNode> {
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+
+    NodeInterpreter(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    void run(List<Stmt> statements) {
+        Node.StmtNode[] program = build(statements);
+
+        try {
+            for (Node.StmtNode statement : program) {
+                statement.execute(globals);
+            }
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    private Node.StmtNode[] build(List<Stmt> statements) {
+        Node.StmtNode[] nodes = new Node.StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = statements.get(i).accept(this);
+        }
+
+        return nodes;
+    }
+
+    private Node.ExprNode build(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Node.StmtNode visitBlockStmt(Stmt.Block stmt) {
+        return new Node.Block(stmt.size, build(stmt.statements));
+    }
+
+    @Override
+    public Node.StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new Node.Expression(build(stmt.expression));
+    }
+
+    @Override
+    public Node.StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        return new Node.Define(stmt.name, stmt.slot, new Node.Closure(stmt, build(stmt.body)));
+    }
+
+    @Override
+    public Node.StmtNode visitIfStmt(Stmt.If stmt) {
+        return new Node.If(
+            build(stmt.condition),
+            stmt.thenBranch.accept(this),
+            stmt.elseBranch == null ? null : stmt.elseBranch.accept(this)
+        );
+    }
+
+    @Override
+    public Node.StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new Node.Print(build(stmt.expression));
+    }
+
+    @Override
+    public Node.StmtNode visitReturnStmt(Stmt.Return stmt) {
+        return new Node.ReturnStmt(interpreter, stmt.value == null ? null : build(stmt.value));
+    }
+
+    @Override
+    public Node.StmtNode visitVarStmt(Stmt.Var stmt) {
+        Node.ExprNode initializer = stmt.initializer == null
+            ? new Node.Literal(null)
+            : build(stmt.initializer);
+
+        return new Node.Define(stmt.name, stmt.slot, initializer);
+    }
+
+    @Override
+    public Node.StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new Node.While(build(stmt.condition), stmt.body.accept(this));
+    }
+
+    @Override
+    public Node.StmtNode visitBreakStmt(Stmt.Break stmt) {
+        return new Node.BreakStmt();
+    }
+
+    @Override
+    public Node.ExprNode visitAssignExpr(Expr.Assign expr) {
+        if (expr.depth == -1) {
+            return new Node.GlobalAssign(expr.name, globals, build(expr.value));
+        }
+
+        return new Node.LocalAssign(expr.depth, expr.slot, build(expr.value));
+    }
+
+    @Override
+    public Node.ExprNode visitBinaryExpr(Expr.Binary expr) {
+        if (expr.operator.type == TokenType.COMMA) {
+            return new Node.Sequence(build(expr.left), build(expr.right));
+        }
+
+        return new Node.UninitializedBinary(expr.operator, build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public Node.ExprNode visitCallExpr(Expr.Call expr) {
+        Node.ExprNode[] arguments = new Node.ExprNode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = build(expr.arguments.get(i));
+        }
+
+        return new Node.Call(interpreter, expr.paren, build(expr.callee), arguments);
+    }
+
+    @Override
+    public Node.ExprNode visitTernaryExpr(Expr.Ternary expr) {
+        return new Node.Ternary(build(expr.conditional), build(expr.truthy), build(expr.falsy));
+    }
+
+    @Override
+    public Node.ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return build(expr.expression);
+    }
+
+    @Override
+    public Node.ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return new Node.Literal(expr.value);
+    }
+
+    @Override
+    public Node.ExprNode visitLogicalExpr(Expr.Logical expr) {
+        return new Node.UninitializedLogical(expr.operator, build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public Node.ExprNode visitUnaryExpr(Expr.Unary expr) {
+        return new Node.UninitializedUnary(expr.operator, build(expr.right));
+    }
+
+    @Override
+    public Node.ExprNode visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth == -1) {
+            return new Node.GlobalVariable(expr.name, globals);
+        }
+
+        return new Node.LocalVariable(expr.depth, expr.slot);
+    }
+}
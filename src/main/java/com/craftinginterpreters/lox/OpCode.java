@@ -0,0 +1,51 @@
+package com.craftinginterpreters.lox;
+
+// Instructions understood by the VM.
+//
+// These are plain int constants rather than an enum so the VM can switch on
+// the raw value read from the chunk without going through ordinal() / values().
+//
+// Operands, if any, follow the opcode in the chunk and are listed next to it.
+final class OpCode {
+    static final int CONSTANT      = 0;  // index into the constant pool
+    static final int NIL           = 1;
+    static final int TRUE          = 2;
+    static final int FALSE         = 3;
+    static final int POP           = 4;
+
+    static final int DEFINE_GLOBAL = 5;  // constant index of the name
+    static final int GET_GLOBAL    = 6;  // constant index of the name
+    static final int SET_GLOBAL    = 7;  // constant index of the name
+    static final int DEFINE_LOCAL  = 8;  // slot
+    static final int GET_LOCAL     = 9;  // depth, slot
+    static final int SET_LOCAL     = 10; // depth, slot
+
+    static final int EQUAL         = 11;
+    static final int NOT_EQUAL     = 12;
+    static final int GREATER       = 13;
+    static final int GREATER_EQUAL = 14;
+    static final int LESS          = 15;
+    static final int LESS_EQUAL    = 16;
+    static final int ADD           = 17;
+    static final int SUBTRACT      = 18;
+    static final int MULTIPLY      = 19;
+    static final int DIVIDE        = 20;
+    static final int NOT           = 21;
+    static final int NEGATE        = 22;
+
+    static final int PRINT         = 23;
+
+    static final int JUMP          = 24; // absolute target
+    static final int JUMP_IF_FALSE = 25; // absolute target, condition is left on the stack
+    static final int JUMP_IF_TRUE  = 26; // absolute target, condition is left on the stack
+
+    static final int PUSH_SCOPE    = 27; // number of slots in the new environment
+    static final int POP_SCOPE     = 28;
+
+    static final int CLOSURE       = 29; // constant index of the CompiledFunction
+    static final int CALL          = 30; // argument count
+    static final int RETURN        = 31;
+
+    private OpCode() {
+    }
+}
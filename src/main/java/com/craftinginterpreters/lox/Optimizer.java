@@ -0,0 +1,236 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Simplifies the resolved AST before it runs, on any backend:
+ *
+ * - constant folding: unary, binary, logical and ternary expressions over literals are
+ *   replaced by their value. The values are computed with the Interpreter's own helpers,
+ *   so they're exactly what would have been computed at runtime.
+ * - dead branches: `if` with a literal condition becomes the branch that would run, and
+ *   `while` with a falsy literal condition goes away, as do statements left with nothing
+ *   to do (a bare literal as an expression statement).
+ *
+ * Anything that would fail at runtime (`1 / 0`, `-"a"`) is left alone, so the error still
+ * happens when, and only if, the code is reached.
+ *
+ * This runs after the Resolver: static errors are still reported for code that gets
+ * pruned, and the Resolver's results are copied over to every node rebuilt here. Nothing
+ * changes scopes (blocks are kept as they are), so those results stay valid.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt result = optimize(statement);
+            if (result != null) optimized.add(result);
+        }
+
+        return optimized;
+    }
+
+    // null when the statement can be dropped
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // for places where a statement is needed, but there's nothing left to run
+    private Stmt optimizeBody(Stmt stmt) {
+        Stmt result = optimize(stmt);
+        if (result != null) return result;
+
+        return new Stmt.Expression(new Expr.Literal(null));
+    }
+
+    private static boolean isLiteral(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static Object valueOf(Expr expr) {
+        return ((Expr.Literal) expr).value;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        Stmt.Block block = new Stmt.Block(optimize(stmt.statements));
+        block.size = stmt.size;
+
+        return block;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (isLiteral(expression)) return null;
+
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        Stmt.Function function = new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body));
+        function.slot = stmt.slot;
+        function.size = stmt.size;
+        function.hasClosures = stmt.hasClosures;
+
+        return function;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+
+        if (isLiteral(condition)) {
+            if (Interpreter.isTruthy(valueOf(condition))) return optimize(stmt.thenBranch);
+            if (stmt.elseBranch != null) return optimize(stmt.elseBranch);
+
+            return null;
+        }
+
+        return new Stmt.If(
+            condition,
+            optimizeBody(stmt.thenBranch),
+            stmt.elseBranch == null ? null : optimizeBody(stmt.elseBranch)
+        );
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        Stmt.Return result = new Stmt.Return(stmt.keyword, stmt.value == null ? null : optimize(stmt.value));
+        result.tailCall = stmt.tailCall;
+
+        return result;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Stmt.Var var = new Stmt.Var(stmt.name, stmt.initializer == null ? null : optimize(stmt.initializer));
+        var.slot = stmt.slot;
+
+        return var;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition) && !Interpreter.isTruthy(valueOf(condition))) return null;
+
+        return new Stmt.While(condition, optimizeBody(stmt.body));
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr.Assign assign = new Expr.Assign(expr.name, optimize(expr.value));
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(left)) {
+            // the left side of a comma is only evaluated for its side effects
+            if (expr.operator.type == TokenType.COMMA) return right;
+
+            if (isLiteral(right)) {
+                try {
+                    return new Expr.Literal(Interpreter.binary(expr.operator, valueOf(left), valueOf(right)));
+                } catch (RuntimeError error) {
+                    // keep it, the error belongs to runtime
+                }
+            }
+        }
+
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+
+        return new Expr.Call(optimize(expr.callee), expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        Expr conditional = optimize(expr.conditional);
+        if (isLiteral(conditional)) {
+            return optimize(Interpreter.isTruthy(valueOf(conditional)) ? expr.truthy : expr.falsy);
+        }
+
+        return new Expr.Ternary(conditional, optimize(expr.truthy), optimize(expr.falsy));
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+        if (isLiteral(expression)) return expression;
+
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(left)) {
+            boolean truthy = Interpreter.isTruthy(valueOf(left));
+
+            // short-circuits to the left value, or evaluates to the right one
+            if (expr.operator.type == TokenType.OR ? truthy : !truthy) return left;
+            return right;
+        }
+
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(right)) {
+            try {
+                return new Expr.Literal(Interpreter.unary(expr.operator, valueOf(right)));
+            } catch (RuntimeError error) {
+                // keep it, the error belongs to runtime
+            }
+        }
+
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+}
@@ -0,0 +1,133 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/*
+ * Parses the tokens of a big script on several threads (--parallel).
+ *
+ * The tokens are cut into chunks of whole top-level declarations. A chunk starts at a
+ * token synchronize() would stop at (Parser.isRecoveryPoint), right after a ';' or a '}'
+ * and outside any braces or parentheses: nothing but `else` can carry on a statement past
+ * those, so the parser is always between two top-level declarations there.
+ *
+ * Each chunk is then parsed by its own Parser on the common ForkJoinPool, which stops at
+ * the end of the chunk as if it were the EOF, and their statements are put back together
+ * in order.
+ *
+ * Those cuts are only sure to be right in code without syntax errors: recovering from one
+ * can carry the parser past a cut (say, a missing ';' before a block's '}' makes
+ * synchronize() skip the '}'). So the first chunk that finds an error is thrown away, and
+ * everything from its start is parsed again in one go, reporting errors as usual. What
+ * comes before it parsed cleanly, exactly as it would have in one go.
+ *
+ * A chunk that parsed cleanly can still have scan errors (an unexpected character between
+ * two statements is skipped). Those are kept until its turn comes, so all the errors are
+ * reported in the order a single Parser would have reported them.
+ */
+class ParallelParser {
+
+    // Below this many tokens per chunk, the threads cost more than they save.
+    private static final int MIN_CHUNK = 1 << 13;
+
+    private static class Chunk extends Parser {
+        final int start;
+        boolean failed = false;
+
+        // the scan errors of its tokens, reported once the chunks before it are
+        final List<Runnable> scanErrors = new ArrayList<>();
+
+        Chunk(TokenBuffer tokens, int start, int end) {
+            super(tokens, start, end);
+            this.start = start;
+        }
+
+        @Override
+        void report(Token token, String message) {
+            failed = true;
+        }
+
+        @Override
+        void report(int line, String message) {
+            scanErrors.add(() -> Lox.error(line, message));
+        }
+    }
+
+    // tokens has to be complete, every token is read before parsing starts
+    static List<Stmt> parse(TokenBuffer tokens) {
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        int chunkCount = Math.min(threads * 4, tokens.size() / MIN_CHUNK);
+        if (threads < 2 || chunkCount <= 1) return new Parser(tokens).parse();
+
+        List<Chunk> chunks = split(tokens, tokens.size() / chunkCount);
+
+        List<ForkJoinTask<List<Stmt>>> parsed = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            parsed.add(ForkJoinPool.commonPool().submit(chunk::parse));
+        }
+
+        List<Stmt> statements = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            List<Stmt> chunkStatements = parsed.get(i).join();
+            Chunk chunk = chunks.get(i);
+
+            if (chunk.failed) {
+                for (int j = i + 1; j < parsed.size(); j++) {
+                    parsed.get(j).cancel(false);
+                }
+
+                statements.addAll(new Parser(tokens, chunk.start, Integer.MAX_VALUE).parse());
+                break;
+            }
+
+            statements.addAll(chunkStatements);
+            for (Runnable error : chunk.scanErrors) {
+                error.run();
+            }
+        }
+
+        return statements;
+    }
+
+    // Cuts the tokens at the first top-level declaration after every `size` tokens.
+    private static List<Chunk> split(TokenBuffer tokens, int size) {
+        List<Chunk> chunks = new ArrayList<>();
+
+        int chunkStart = 0;
+        int depth = 0;
+        TokenType previous = SEMICOLON;
+
+        for (int i = 0; ; i++) {
+            TokenType type = tokens.type(i);
+            if (type == EOF) break;
+
+            if (i - chunkStart >= size && depth == 0
+                    && (previous == SEMICOLON || previous == RIGHT_BRACE)
+                    && Parser.isRecoveryPoint(type)) {
+                chunks.add(new Chunk(tokens, chunkStart, i));
+                chunkStart = i;
+            }
+
+            switch (type) {
+                case LEFT_BRACE:
+                case LEFT_PAREN:
+                    depth++;
+                    break;
+                case RIGHT_BRACE:
+                case RIGHT_PAREN:
+                    depth--;
+                    break;
+            }
+
+            previous = type;
+        }
+
+        // the last chunk runs to the real EOF
+        chunks.add(new Chunk(tokens, chunkStart, Integer.MAX_VALUE));
+        return chunks;
+    }
+}
@@ -0,0 +1,156 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.craftinginterpreters.lox.TokenType.EOF;
+
+/*
+ * Scans a big source on several threads (--parallel).
+ *
+ * The source is cut into chunks at newlines where a token can start: not inside a string
+ * or a comment. Finding those takes a quick pass over the chars that only follows
+ * strings and comments, exactly like the Scanner does (multilineComment's nesting
+ * included), and counts lines on the way, so every chunk knows the line it starts on.
+ *
+ * Each chunk is then scanned by its own Scanner on the common ForkJoinPool, and their
+ * tokens are put back together in order, with each chunk's Symbols swapped for the one
+ * symbol per name of the whole source (SymbolTable.addAll). Errors found by the chunks
+ * go with their tokens and are reported by the Parser as it reads them, in source order
+ * with the syntax errors, as if the source had been scanned as it was parsed.
+ */
+class ParallelScanner {
+
+    // Below this many chars per chunk, the threads cost more than they save.
+    private static final int MIN_CHUNK = 1 << 16;
+
+    // Keeps its errors in its tokens, with the token it was scanning: they're reported by the
+    // Parser, when it gets there (see TokenBuffer).
+    private static class Chunk extends Scanner {
+        Chunk(char[] source, int offset, int end, int line) {
+            super(source, offset, end, line);
+        }
+
+        @Override
+        void error(int line, String message) {
+            tokens().error(tokens().size(), line, message);
+        }
+    }
+
+    private final char[] source;
+    private final int end;
+    private int current;
+    private int line = 1;
+
+    private ParallelScanner(char[] source, int offset, int end) {
+        this.source = source;
+        this.end = end;
+        this.current = offset;
+    }
+
+    static TokenBuffer scan(char[] source, int offset, int end) {
+        // a few chunks per thread, so one slow chunk doesn't hold up the others
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        int chunkCount = Math.min(threads * 4, (end - offset) / MIN_CHUNK);
+        if (threads < 2 || chunkCount <= 1) return new Chunk(source, offset, end, 1).scanTokens();
+
+        ParallelScanner splitter = new ParallelScanner(source, offset, end);
+        List<Chunk> chunks = splitter.split((end - offset) / chunkCount);
+
+        List<ForkJoinTask<TokenBuffer>> scanned = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            scanned.add(ForkJoinPool.commonPool().submit(chunk::scanChunk));
+        }
+
+        TokenBuffer tokens = new TokenBuffer(source, null);
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < chunks.size(); i++) {
+            TokenBuffer chunkTokens = scanned.get(i).join();
+            tokens.addAll(chunkTokens, symbols.addAll(chunks.get(i).symbols));
+        }
+
+        tokens.add(EOF, end, 0, null, splitter.line);
+        tokens.trim();
+
+        return tokens;
+    }
+
+    // Cuts the source at the first safe newline after every `size` chars.
+    private List<Chunk> split(int size) {
+        List<Chunk> chunks = new ArrayList<>();
+
+        int chunkStart = current;
+        int chunkLine = line;
+
+        while (current < end) {
+            switch (source[current++]) {
+                case '\n':
+                    line++;
+
+                    if (current - chunkStart >= size && current < end) {
+                        chunks.add(new Chunk(source, chunkStart, current, chunkLine));
+                        chunkStart = current;
+                        chunkLine = line;
+                    }
+                    break;
+                case '"':
+                    string();
+                    break;
+                case '/':
+                    if (peek() == '/') {
+                        // up to the newline, which is a place to cut like any other
+                        while (current < end && source[current] != '\n') current++;
+                    } else if (peek() == '*') {
+                        current++;
+                        multilineComment();
+                    }
+                    break;
+            }
+        }
+
+        chunks.add(new Chunk(source, chunkStart, end, chunkLine));
+        return chunks;
+    }
+
+    // Scanner.string, without the token
+    private void string() {
+        while (current < end && source[current] != '"') {
+            if (source[current] == '\n') line++;
+            current++;
+        }
+
+        current++;
+    }
+
+    // Scanner.multilineComment, from just after the opening "/*"
+    private void multilineComment() {
+        int nest = 1;
+
+        while (current < end) {
+            if (source[current] == '/' && peekNext() == '*') {
+                nest++;
+            }
+            if (source[current] == '*' && peekNext() == '/') {
+                nest--;
+            }
+            if (source[current] == '\n') line++;
+            if (nest == 0) break;
+
+            current++;
+        }
+
+        current += 2;
+    }
+
+    private char peek() {
+        if (current >= end) return '\0';
+        return source[current];
+    }
+
+    private char peekNext() {
+        if (current + 1 >= end) return '\0';
+        return source[current + 1];
+    }
+}
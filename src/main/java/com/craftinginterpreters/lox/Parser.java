@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
-import java.util.function.Supplier;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
@@ -68,28 +67,60 @@ class Parser {
 
     }
 
-    private final List<Token> tokens;
-    private int current = 0;
+    // tokens are read by index straight from the buffer; a Token is only built for the
+    // ones that end up in the AST or in an error (previous() and peek()). The parser never
+    // looks further than one token back or ahead, so the buffer can be a stream.
+    private final TokenBuffer tokens;
+    private int current;
 
-    Parser(List<Token> tokens) {
+    // index of the token where parsing stops as if it were the EOF (see ParallelParser)
+    private final int end;
+
+    // index of the next token with scan errors to report, in a buffer scanned up front
+    private int scanError;
+
+    Parser(TokenBuffer tokens) {
+        this(tokens, 0, Integer.MAX_VALUE);
+    }
+
+    Parser(TokenBuffer tokens, int start, int end) {
         this.tokens = tokens;
+        this.current = start;
+        this.end = end;
+        this.scanError = tokens.nextError(start);
     }
 
     List<Stmt> parse() {
         List<Stmt> statements = new ArrayList<>();
-        while(!isAtEnd()) {
-            statements.add(declaration());
+        while(hasNext()) {
+            statements.add(next());
         }
 
         return statements;
     }
 
+    // One top-level declaration at a time, to run each as soon as it's parsed. Like in
+    // parse(), a declaration with a syntax error is reported and comes back as null.
+    boolean hasNext() {
+        return !isAtEnd();
+    }
+
+    Stmt next() {
+        return declaration();
+    }
+
     private Stmt declaration() {
         try {
-            if (match(FUN)) return functionDeclaration("function");
-            if (match(VAR)) return varDeclaration();
-
-            return statement();
+            switch (peekType()) {
+                case FUN:
+                    advance();
+                    return functionDeclaration("function");
+                case VAR:
+                    advance();
+                    return varDeclaration();
+                default:
+                    return statement();
+            }
         } catch (ParseError err) {
             synchronize();
 
@@ -98,8 +129,9 @@ class Parser {
     }
 
     private Stmt.Function functionDeclaration(String kind) {
-        Token name = consume(IDENTIFIER, String.format("Expect %s name.", kind));
-        consume(LEFT_PAREN, String.format("Expect '(' after %s name", kind));
+        consume(IDENTIFIER, "Expect %s name.", kind);
+        Token name = previous();
+        consume(LEFT_PAREN, "Expect '(' after %s name", kind);
 
         List<Token> parameters = new ArrayList<>();
         if (!check(RIGHT_PAREN)) {
@@ -108,21 +140,23 @@ class Parser {
                     throw new RuntimeError(peek(), "Cannot have more than 8 parameters.");
                 }
 
-                parameters.add(consume(IDENTIFIER, "Expect parameter name"));
+                consume(IDENTIFIER, "Expect parameter name");
+                parameters.add(previous());
             } while (match(COMMA));
         }
 
         consume(RIGHT_PAREN, "Expect ')' after parameters");
 
         // remember, block() expect '{' to already be consumed. So we consume it here.
-        consume(LEFT_BRACE, String.format("Expect '{' before %s body.", kind));
+        consume(LEFT_BRACE, "Expect '{' before %s body.", kind);
         List<Stmt> body = block();
 
         return new Stmt.Function(name, parameters, body);
     }
 
     private Stmt varDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect variable name.");
+        consume(IDENTIFIER, "Expect variable name.");
+        Token name = previous();
 
         Expr initializer = null;
         if (match(EQUAL)) {
@@ -135,15 +169,31 @@ class Parser {
     }
 
     private Stmt statement() {
-        if (match(FOR)) return forStatement();
-        if (match(IF)) return ifStatement();
-        if (match(PRINT)) return printStatement();
-        if (match(RETURN)) return returnStatement();
-        if (match(WHILE)) return whileStatement();
-        if (match(BREAK)) return breakStatement();
-        if (match(LEFT_BRACE)) return new Stmt.Block(block());
-
-        return expressionStatement();
+        switch (peekType()) {
+            case FOR:
+                advance();
+                return forStatement();
+            case IF:
+                advance();
+                return ifStatement();
+            case PRINT:
+                advance();
+                return printStatement();
+            case RETURN:
+                advance();
+                return returnStatement();
+            case WHILE:
+                advance();
+                return whileStatement();
+            case BREAK:
+                advance();
+                return breakStatement();
+            case LEFT_BRACE:
+                advance();
+                return new Stmt.Block(block());
+            default:
+                return expressionStatement();
+        }
     }
 
     /*
@@ -249,8 +299,9 @@ class Parser {
     }
 
     private Stmt breakStatement() {
+        Token keyword = previous();
         consume(SEMICOLON, "Expect ';' after break.");
-        return new Stmt.Break();
+        return new Stmt.Break(keyword);
     }
 
     private Stmt whileStatement() {
@@ -299,107 +350,119 @@ class Parser {
         return generator.apply(expr);
     }
 
-    private Expr expression() {
-        return assignment();
+    // Binding power of the infix operators, loosest first. Every operator is left-associative
+    // except assignment and the ternary, which are right-associative.
+    private enum Precedence {
+        NONE,
+        ASSIGNMENT,  // =
+        SEPARATOR,   // ,
+        TERNARY,     // ?:
+        OR,          // or
+        AND,         // and
+        EQUALITY,    // == !=
+        COMPARISON,  // < > <= >=
+        TERM,        // - +
+        FACTOR,      // * /
+        UNARY;       // the operands of * and /, nothing infix binds this tightly
+
+        private static final Precedence[] VALUES = values();
+
+        Precedence next() {
+            return VALUES[ordinal() + 1];
+        }
     }
 
-    private Expr assignment() {
-        Expr expr = separator();
+    // indexed by TokenType ordinal, NONE for tokens that aren't infix operators
+    private static final Precedence[] INFIX = new Precedence[TokenType.values().length];
 
-        if (match(EQUAL)) {
-            Token equals = previous();
-            Expr value = assignment();
-
-            if (expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable) expr).name;
-                return new Expr.Assign(name, value);
-            }
+    static {
+        Arrays.fill(INFIX, Precedence.NONE);
 
-            error(equals, "Invalid assignment target.");
-        }
-
-        return expr;
+        INFIX[EQUAL.ordinal()] = Precedence.ASSIGNMENT;
+        INFIX[COMMA.ordinal()] = Precedence.SEPARATOR;
+        INFIX[QUESTION_MARK.ordinal()] = Precedence.TERNARY;
+        INFIX[OR.ordinal()] = Precedence.OR;
+        INFIX[AND.ordinal()] = Precedence.AND;
+        INFIX[BANG_EQUAL.ordinal()] = Precedence.EQUALITY;
+        INFIX[EQUAL_EQUAL.ordinal()] = Precedence.EQUALITY;
+        INFIX[GREATER.ordinal()] = Precedence.COMPARISON;
+        INFIX[GREATER_EQUAL.ordinal()] = Precedence.COMPARISON;
+        INFIX[LESS.ordinal()] = Precedence.COMPARISON;
+        INFIX[LESS_EQUAL.ordinal()] = Precedence.COMPARISON;
+        INFIX[MINUS.ordinal()] = Precedence.TERM;
+        INFIX[PLUS.ordinal()] = Precedence.TERM;
+        INFIX[STAR.ordinal()] = Precedence.FACTOR;
+        INFIX[SLASH.ordinal()] = Precedence.FACTOR;
     }
 
-    private Expr separator() {
-        Expr expr = ternary();
-
-        while (match(COMMA)) {
-            Token operator = previous();
-            Expr right = ternary();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
+    private Expr expression() {
+        return expression(Precedence.ASSIGNMENT);
     }
 
-    private Expr ternary() {
-        Expr expr = or();
+    // Precedence climbing: an operand, then every infix operator that binds at least as
+    // tightly as min, each taking the operand on its right at its own level. Going one level
+    // up costs a call per operator actually there rather than a call per level for every
+    // operand, so an operand is parsed in a few frames whatever the number of levels.
+    private Expr expression(Precedence min) {
+        Expr expr = unary();
 
-        while (match(QUESTION_MARK)) {
-            Expr truthy = ternary();
+        while (true) {
+            Precedence precedence = INFIX[peekType().ordinal()];
+            if (precedence.compareTo(min) < 0) return expr;
 
-            while (match(COLON)) {
-                Expr falsy = ternary();
-                expr = new Expr.Ternary(expr, truthy, falsy);
+            advance();
 
-                return expr;
+            switch (precedence) {
+                case ASSIGNMENT:
+                    expr = assignment(expr);
+                    break;
+                case TERNARY:
+                    expr = ternary(expr);
+                    break;
+                case OR:
+                case AND: {
+                    Token operator = previous();
+                    Expr right = expression(precedence.next());
+                    expr = new Expr.Logical(expr, operator, right);
+                    break;
+                }
+                default: {
+                    Token operator = previous();
+                    Expr right = expression(precedence.next());
+                    expr = new Expr.Binary(expr, operator, right);
+                    break;
+                }
             }
         }
-
-        return expr;
-    }
-
-    private Expr or() {
-        return logical(this::and, OR);
-    }
-
-    private Expr and() {
-        return logical(this::equality, AND);
     }
 
-    private Expr logical(Supplier<Expr> parserFunction, TokenType token) {
-        Expr expr = parserFunction.get();
+    private Expr assignment(Expr target) {
+        Token equals = previous();
+        Expr value = expression(Precedence.ASSIGNMENT);
 
-        while (match(token)) {
-            Token operator = previous();
-            Expr right = parserFunction.get();
-            expr = new Expr.Logical(expr, operator, right);
+        if (target instanceof Expr.Variable) {
+            Token name = ((Expr.Variable) target).name;
+            return new Expr.Assign(name, value);
         }
 
-        return expr;
-    }
-
-    private Expr equality() {
-        return binary(this::comparison, BANG_EQUAL, EQUAL_EQUAL);
-    }
+        error(equals, "Invalid assignment target.");
 
-    private Expr comparison() {
-        return binary(this::addition, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL);
+        return target;
     }
 
-    private Expr addition() {
-        return binary(this::multiplication, MINUS, PLUS);
-    }
+    // a '?' without its ':' leaves the condition alone, and what's after the '?' is dropped
+    private Expr ternary(Expr conditional) {
+        Expr truthy = expression(Precedence.TERNARY);
+        if (!match(COLON)) return conditional;
 
-    private Expr multiplication() {
-        return binary(this::unary, STAR, SLASH);
-    }
-
-    private Expr binary(Supplier<Expr> parserFunction, TokenType... matchedTokens) {
-        Expr expr = parserFunction.get();
-
-        while (match(matchedTokens)) {
-            Token operator = previous();
-            Expr right = parserFunction.get();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
+        Expr falsy = expression(Precedence.TERNARY);
+        return new Expr.Ternary(conditional, truthy, falsy);
     }
 
     private Expr unary() {
-        if (match(BANG, MINUS)) {
+        TokenType type = peekType();
+        if (type == BANG || type == MINUS) {
+            advance();
             Token operator = previous();
             Expr right = unary();
 
@@ -435,106 +498,164 @@ class Parser {
                 // - we don't want the user to be able to declare variables inside function arguments
                 // - the separator operator would be confused with parameters if it's expression because
                 //   precedence. (Should we change precedence? What about other languages?)
-                arguments.add(ternary());
+                arguments.add(expression(Precedence.TERNARY));
             } while (match(COMMA));
         }
 
-        Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        Token paren = previous();
 
         return new Expr.Call(callee, paren, arguments);
     }
 
     private Expr primary() {
-        if (match(FALSE)) return new Expr.Literal(false);
-        if (match(TRUE)) return new Expr.Literal(true);
-        if (match(NIL)) return new Expr.Literal(null);
-
-        if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
-        }
+        switch (peekType()) {
+            case FALSE:
+                advance();
+                return new Expr.Literal(false);
+            case TRUE:
+                advance();
+                return new Expr.Literal(true);
+            case NIL:
+                advance();
+                return new Expr.Literal(null);
+            case NUMBER:
+            case STRING:
+                advance();
+                return new Expr.Literal(tokens.literal(current - 1));
+            case IDENTIFIER:
+                advance();
+                return new Expr.Variable(previous());
+            case LEFT_PAREN: {
+                advance();
+                Expr expr = expression();
+                consume(RIGHT_PAREN, "Expect ')' after expression");
+                return new Expr.Grouping(expr);
+            }
+            case STAR:
+            case SLASH:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                advance();
+                expression();
 
-        if (match(IDENTIFIER)) {
-            return new Expr.Variable(previous());
+                throw error(peek(), "Comparator requires expression on the left side.");
+            default:
+                throw error(peek(), "Expect expression.");
         }
+    }
 
-        if (match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression");
-            return new Expr.Grouping(expr);
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
         }
 
-        if (match(STAR, SLASH, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, BANG_EQUAL, EQUAL_EQUAL)) {
-            expression();
+        throw error(peek(), message);
+    }
 
-            throw error(peek(), "Comparator requires expression on the left side.");
+    // The message is only formatted when the token isn't there: consume is on the hot path.
+    private void consume(TokenType type, String format, String kind) {
+        if (check(type)) {
+            advance();
+            return;
         }
 
-        throw error(peek(), "Expect expression.");
+        throw error(peek(), String.format(format, kind));
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
-
-        throw error(peek(), message);
+    private ParseError error(Token token, String message) {
+        report(token, message);
+        return new ParseError();
     }
 
-    private ParseError error(Token token, String message) {
+    void report(Token token, String message) {
         Lox.error(token, message);
-        return new ParseError();
+    }
+
+    void report(int line, String message) {
+        Lox.error(line, message);
     }
 
     private void synchronize() {
         advance();
 
         while(!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
-
-            switch (peek().type) {
-                case CLASS:
-                case FUN:
-                case VAR:
-                case FOR:
-                case IF:
-                case WHILE:
-                case PRINT:
-                case RETURN:
-                    return;
-            }
+            if (tokens.type(current - 1) == SEMICOLON) return;
+            if (isRecoveryPoint(peekType())) return;
 
             advance();
         }
     }
 
-    private boolean match(TokenType... types) {
-        for (TokenType type: types) {
-            if (check(type)) {
-                advance();
+    // the tokens synchronize() stops at, since a statement starts there
+    static boolean isRecoveryPoint(TokenType type) {
+        switch (type) {
+            case CLASS:
+            case FUN:
+            case VAR:
+            case FOR:
+            case IF:
+            case WHILE:
+            case PRINT:
+            case RETURN:
                 return true;
-            }
+            default:
+                return false;
         }
+    }
+
+    // One type only: a varargs match(TokenType...) would allocate its array on every call.
+    // Where several types can follow, the callers switch on peekType() instead.
+    private boolean match(TokenType type) {
+        if (!check(type)) return false;
 
-        return false;
+        advance();
+        return true;
     }
 
     private boolean check(TokenType type) {
-        if (isAtEnd()) return false;
-        return peek().type == type;
+        TokenType next = peekType();
+        return next != EOF && next == type;
     }
 
-    private Token advance() {
+    private void advance() {
         if (!isAtEnd()) current++;
-        return previous();
+
+        // nothing looks further back than previous()
+        tokens.release(current - 1);
     }
 
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return peekType() == EOF;
+    }
+
+    private TokenType peekType() {
+        if (current >= end) return EOF;
+        if (current >= scanError) reportScanErrors();
+
+        return tokens.type(current);
+    }
+
+    // What a Scanner filling the buffer would have reported when the token at current was
+    // read for the first time, had it not been scanned up front.
+    private void reportScanErrors() {
+        for (TokenBuffer.ScanError error : tokens.errors(scanError, current + 1)) {
+            report(error.line, error.message);
+        }
+
+        scanError = tokens.nextError(current + 1);
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 }
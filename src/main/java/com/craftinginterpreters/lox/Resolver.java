@@ -0,0 +1,279 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/*
+ * Static pass that runs after parsing and before interpreting.
+ *
+ * For every local variable it computes:
+ *
+ * - depth: how many environments we have to walk up from the current one, and
+ * - slot : the index of the variable inside that environment.
+ *
+ * and stores them in the AST node, so the Interpreter can do variable lookup with
+ * two index operations instead of hashing the name in every enclosing environment.
+ *
+ * Anything not found in a local scope is assumed to be global (depth = -1) and is
+ * looked up by name at runtime, as before.
+ *
+ * The scopes here must mirror the environments created by the Interpreter exactly:
+ * one per block, and one per function call holding both the parameters and the
+ * top-level declarations of the function body.
+ */
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static class Scope {
+        final Map<Symbol, Integer> slots = new HashMap<>();
+        int size = 0;
+
+        // Redeclaring a name in the same scope reuses its slot, just like the old
+        // map-based environment would overwrite the previous value.
+        int declare(Symbol name) {
+            Integer slot = slots.get(name);
+            if (slot != null) return slot;
+
+            slots.put(name, size);
+            return size++;
+        }
+    }
+
+    private final Stack<Scope> scopes = new Stack<>();
+
+    // `break` and `return` no longer unwind the Java stack, they are reported as a
+    // Completion and consumed by the nearest loop / function of the *same* body. So
+    // a stray one has to be caught here, before anything runs.
+    private int loopDepth = 0;
+    private Stmt.Function function = null;
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.push(new Scope());
+    }
+
+    private int endScope() {
+        return scopes.pop().size;
+    }
+
+    private int declare(Token name) {
+        if (scopes.isEmpty()) return -1;
+
+        return scopes.peek().declare(name.symbol());
+    }
+
+    private void resolveFunction(Stmt.Function function) {
+        int enclosingLoopDepth = loopDepth;
+        Stmt.Function enclosingFunction = this.function;
+        loopDepth = 0;
+        this.function = function;
+
+        beginScope();
+
+        // parameters always take the first slots, in order, so LoxFunction can
+        // bind the arguments by position.
+        Scope scope = scopes.peek();
+        for (Token param : function.params) {
+            scope.slots.put(param.symbol(), scope.size++);
+        }
+        resolve(function.body);
+
+        function.size = endScope();
+
+        loopDepth = enclosingLoopDepth;
+        this.function = enclosingFunction;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        resolve(stmt.statements);
+        stmt.size = endScope();
+
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        // the enclosing call's environment can now outlive the call, see LoxFunction
+        if (function != null) function.hasClosures = true;
+
+        // declared before resolving the body so the function can refer to itself
+        stmt.slot = declare(stmt.name);
+        resolveFunction(stmt);
+
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        if (stmt.elseBranch != null) resolve(stmt.elseBranch);
+
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (function == null) {
+            Lox.error(stmt.keyword, "Cannot return from top-level code.");
+        }
+
+        stmt.tailCall = stmt.value instanceof Expr.Call;
+
+        if (stmt.value != null) resolve(stmt.value);
+
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // The initializer is resolved *before* the variable is declared, so in
+        //
+        //   var a = 1;
+        //   { var a = a + 2; }
+        //
+        // the inner `a + 2` still refers to the outer `a`.
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+
+        stmt.slot = declare(stmt.name);
+
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+
+        loopDepth++;
+        resolve(stmt.body);
+        loopDepth--;
+
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (loopDepth == 0) {
+            Lox.error(stmt.keyword, "Cannot use 'break' outside of a loop.");
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).slots.get(expr.name.symbol());
+            if (slot != null) {
+                expr.depth = scopes.size() - 1 - i;
+                expr.slot = slot;
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        resolve(expr.conditional);
+        resolve(expr.truthy);
+        resolve(expr.falsy);
+
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).slots.get(expr.name.symbol());
+            if (slot != null) {
+                expr.depth = scopes.size() - 1 - i;
+                expr.slot = slot;
+                return null;
+            }
+        }
+
+        return null;
+    }
+}
@@ -1,59 +1,114 @@
 package com.craftinginterpreters.lox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.CharBuffer;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
 class Scanner {
 
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
-        keywords.put("break", BREAK);
-    }
-
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
-    private int start = 0;
-    private int current = 0;
+    // Scans source[offset, end) in place: positions below are indexes into source, and
+    // tokens point back into it instead of copying their lexeme out (see TokenBuffer).
+    private final char[] source;
+    private final int end;
+    private final TokenBuffer tokens;
+    private int start;
+    private int current;
     private int line = 1;
 
+    // the Double each number literal became, so the same number written again gets the same
+    // object: a small direct-mapped cache, a collision just replaces the entry
+    private final Double[] numbers = new Double[256];
+
+    // this source's identifiers, one Symbol per name
+    final SymbolTable symbols = new SymbolTable();
+
+    // every power of ten that's exact as a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     Scanner(String source) {
+        this(source.toCharArray(), 0, source.length());
+    }
+
+    // Uses the buffer's own array when it has one, e.g. a buffer the source was decoded into.
+    Scanner(CharBuffer source) {
+        this(array(source), source.hasArray() ? source.arrayOffset() + source.position() : 0,
+            source.hasArray() ? source.arrayOffset() + source.limit() : source.remaining());
+    }
+
+    Scanner(char[] source, int offset, int end) {
+        this(source, offset, end, 1);
+    }
+
+    // a piece of a bigger source, that starts on the given line (see ParallelScanner)
+    Scanner(char[] source, int offset, int end, int line) {
         this.source = source;
+        this.end = end;
+        this.tokens = new TokenBuffer(source, this);
+        this.start = offset;
+        this.current = offset;
+        this.line = line;
+    }
+
+    private static char[] array(CharBuffer buffer) {
+        if (buffer.hasArray()) return buffer.array();
+
+        char[] chars = new char[buffer.remaining()];
+        buffer.duplicate().get(chars);
+
+        return chars;
     }
 
-    List<Token> scanTokens() {
-        while(!isAtEnd()) {
+    // Scans the whole source up front.
+    TokenBuffer scanTokens() {
+        while (nextToken() != EOF) {
+            // keep going
+        }
+
+        tokens.trim();
+
+        return tokens;
+    }
+
+    // Scans the whole source up front, on several threads if it's big enough to be worth it.
+    TokenBuffer scanTokensInParallel() {
+        return ParallelScanner.scan(source, current, end);
+    }
+
+    // Scans the whole source into the buffer as one piece of a bigger source: no EOF token.
+    TokenBuffer scanChunk() {
+        while (!isAtEnd()) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
         return tokens;
     }
 
+    // The tokens without scanning any: they're scanned as the buffer is read, see TokenBuffer.
+    TokenBuffer tokens() {
+        return tokens;
+    }
+
+    // Scans one more token into the buffer, skipping whitespace and comments, and returns its type.
+    TokenType nextToken() {
+        int scanned = tokens.size();
+
+        while (!isAtEnd()) {
+            start = current;
+            scanToken();
+
+            if (tokens.size() > scanned) return tokens.type(scanned);
+        }
+
+        tokens.add(EOF, current, 0, null, line);
+        return EOF;
+    }
+
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 
     private void scanToken() {
@@ -98,15 +153,19 @@ class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, String.format("Unexpected Character {0}.", c));
+                    error(line, String.format("Unexpected Character {0}.", c));
                 }
                 break;
         }
     }
 
+    // reported right away, unless scanning on another thread (see ParallelScanner)
+    void error(int line, String message) {
+        Lox.error(line, message);
+    }
+
     private char advance() {
-        current++;
-        return source.charAt(current - 1);
+        return source[current++];
     }
 
     private void addToken(TokenType type) {
@@ -114,13 +173,12 @@ class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(type, start, current - start, literal, line);
     }
 
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (source[current] != expected) return false;
 
         current++;
         return true;
@@ -128,7 +186,7 @@ class Scanner {
 
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return source[current];
     }
 
     private void string() {
@@ -139,14 +197,14 @@ class Scanner {
 
         // unterminated string
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated String");
+            error(line, "Unterminated String");
             return;
         }
 
         advance(); // the closing "
 
         // trim the surrounding quotes
-        String value = source.substring(start + 1, current - 1);
+        String value = new String(source, start + 1, current - start - 2);
         addToken(STRING, value);
     }
 
@@ -174,34 +232,121 @@ class Scanner {
         return c >= '0' && c <= '9';
     }
 
+    // The value is read from the digits as they're scanned: all of them, integer and
+    // fraction, make up `mantissa`, and `fraction` says how many of them come after the '.'.
     private void number() {
-        while(isDigit(peek())) advance();
+        long mantissa = source[start] - '0';
+        int digits = 1;
+        int fraction = 0;
+
+        while(isDigit(peek())) {
+            mantissa = mantissa * 10 + (advance() - '0');
+            digits++;
+        }
 
         // look for fractional part
         if (peek() == '.' && isDigit(peekNext())) {
             // consumes the '.'
             advance();
 
-            while(isDigit(peek())) advance();
+            while(isDigit(peek())) {
+                mantissa = mantissa * 10 + (advance() - '0');
+                digits++;
+                fraction++;
+            }
+        }
+
+        double value;
+        if (digits <= 15 && fraction < POWERS_OF_TEN.length) {
+            // Both the mantissa (below 2^53) and the power of ten are exact doubles, so the
+            // division is correctly rounded, just like parseDouble.
+            value = fraction == 0 ? mantissa : mantissa / POWERS_OF_TEN[fraction];
+        } else {
+            // too many digits for that (and mantissa may have overflowed): the JDK knows how
+            value = Double.parseDouble(new String(source, start, current - start));
+        }
+
+        addToken(NUMBER, box(value));
+    }
+
+    private Double box(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        int index = (int) ((bits * 0x9E3779B97F4A7C15L) >>> 56);
+
+        Double cached = numbers[index];
+        if (cached == null || Double.doubleToRawLongBits(cached) != bits) {
+            cached = value;
+            numbers[index] = cached;
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        return cached;
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (current + 1 >= end) return '\0';
+        return source[current + 1];
     }
 
     private void identifier() {
         while(isAlphaNumeric(peek())) advance();
 
-        // see if identifier is a reserved word
-        String text = source.substring(start, current);
+        TokenType type = keyword(source, start, current - start);
+        if (type != IDENTIFIER) {
+            addToken(type);
+            return;
+        }
+
+        addToken(IDENTIFIER, symbols.intern(source, start, current - start));
+    }
+
+    // The keyword source[start, start + length) is, or IDENTIFIER, without building a String:
+    // the first char (and the second, where keywords share the first) says which keyword
+    // it can be, then the rest is compared in place.
+    static TokenType keyword(char[] source, int start, int length) {
+        switch (source[start]) {
+            case 'a': return keyword(source, start, length, 1, "nd", AND);
+            case 'b': return keyword(source, start, length, 1, "reak", BREAK);
+            case 'c': return keyword(source, start, length, 1, "lass", CLASS);
+            case 'e': return keyword(source, start, length, 1, "lse", ELSE);
+            case 'f':
+                if (length > 1) {
+                    switch (source[start + 1]) {
+                        case 'a': return keyword(source, start, length, 2, "lse", FALSE);
+                        case 'o': return keyword(source, start, length, 2, "r", FOR);
+                        case 'u': return keyword(source, start, length, 2, "n", FUN);
+                    }
+                }
+                break;
+            case 'i': return keyword(source, start, length, 1, "f", IF);
+            case 'n': return keyword(source, start, length, 1, "il", NIL);
+            case 'o': return keyword(source, start, length, 1, "r", OR);
+            case 'p': return keyword(source, start, length, 1, "rint", PRINT);
+            case 'r': return keyword(source, start, length, 1, "eturn", RETURN);
+            case 's': return keyword(source, start, length, 1, "uper", SUPER);
+            case 't':
+                if (length > 1) {
+                    switch (source[start + 1]) {
+                        case 'h': return keyword(source, start, length, 2, "is", THIS);
+                        case 'r': return keyword(source, start, length, 2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v': return keyword(source, start, length, 1, "ar", VAR);
+            case 'w': return keyword(source, start, length, 1, "hile", WHILE);
+        }
+
+        return IDENTIFIER;
+    }
+
+    // type, if what follows the first `offset` chars is exactly `rest`
+    private static TokenType keyword(char[] source, int start, int length, int offset, String rest, TokenType type) {
+        if (length != offset + rest.length()) return IDENTIFIER;
+
+        for (int i = 0; i < rest.length(); i++) {
+            if (source[start + offset + i] != rest.charAt(i)) return IDENTIFIER;
+        }
 
-        TokenType type = keywords.get(text);
-        if (type == null) type = IDENTIFIER;
-        addToken(type);
+        return type;
     }
 
     private boolean isAlpha(char c) {
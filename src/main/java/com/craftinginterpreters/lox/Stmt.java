@@ -19,6 +19,7 @@ abstract class Stmt{
 
     static class Block extends Stmt {
         final List<Stmt> statements;
+        int size;
 
         Block(List<Stmt> statements) {
             this.statements = statements;
@@ -45,6 +46,10 @@ abstract class Stmt{
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        int slot = -1;
+        int size;
+        boolean hasClosures;
+        JitCompiler.Compiled compiled;
 
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -88,6 +93,7 @@ abstract class Stmt{
     static class Return extends Stmt {
         final Token keyword;
         final Expr value;
+        boolean tailCall;
 
         Return(Token keyword, Expr value) {
             this.keyword = keyword;
@@ -102,6 +108,7 @@ abstract class Stmt{
     static class Var extends Stmt {
         final Token name;
         final Expr initializer;
+        int slot = -1;
 
         Var(Token name, Expr initializer) {
             this.name = name;
@@ -127,9 +134,11 @@ abstract class Stmt{
         }
     }
 
-
     static class Break extends Stmt {
-        Break( ) {
+        final Token keyword;
+
+        Break(Token keyword) {
+            this.keyword = keyword;
         }
 
         <R> R accept(Visitor<R> visitor) {
@@ -0,0 +1,73 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * An interned identifier: within one compilation there's exactly one Symbol per name (see
+ * SymbolTable), so symbols are compared by identity and hash without looking at their chars.
+ *
+ * Globals outlive compilations (the REPL, --stream, cached programs all share them), so a
+ * global isn't found by its Symbol but by a global id, a small dense number that indexes
+ * Environment's globals. Those ids are handed out by name, once per name for the whole
+ * process, and only to names actually used as globals: a symbol asks for its id the first
+ * time it's used as one, and keeps it.
+ */
+final class Symbol {
+    final String name;
+
+    // index in the SymbolTable that made it, -1 for a symbol made outside of one
+    final int id;
+    private final int hash;
+
+    // -1 until this symbol is first used as a global
+    private int global = -1;
+
+    Symbol(String name, int id, int hash) {
+        this.name = name;
+        this.id = id;
+        this.hash = hash;
+    }
+
+    // A symbol of its own, for names that don't come out of a scanned source ("clock").
+    Symbol(String name) {
+        this(name, -1, name.hashCode());
+    }
+
+    private static final Map<String, Integer> globalIds = new HashMap<>();
+
+    int global() {
+        if (global == -1) global = globalId(name);
+        return global;
+    }
+
+    private static synchronized int globalId(String name) {
+        Integer id = globalIds.get(name);
+        if (id == null) {
+            id = globalIds.size();
+            globalIds.put(name, id);
+        }
+
+        return id;
+    }
+
+    boolean is(char[] source, int start, int length) {
+        if (name.length() != length) return false;
+
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source[start + i]) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,82 @@
+package com.craftinginterpreters.lox;
+
+/*
+ * The symbols of one compilation, one per name. Each Scanner has its own, so interning needs
+ * no lock, and the table goes away with the compilation instead of growing for as long as
+ * the process runs.
+ *
+ * The chunks of a parallel scan each intern into their own table too. Putting their tokens
+ * back together goes through addAll, which finds the symbol this table has for each of
+ * theirs: once per name, not once per token.
+ */
+class SymbolTable {
+    // open addressing, always at most half full
+    private Symbol[] table = new Symbol[256];
+    private int count = 0;
+
+    // the symbol for source[start, start + length), without building a String unless it's new
+    Symbol intern(char[] source, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + source[i];
+        }
+
+        int mask = table.length - 1;
+        int index = hash & mask;
+        for (Symbol symbol = table[index]; symbol != null; symbol = table[index]) {
+            if (symbol.hashCode() == hash && symbol.is(source, start, length)) return symbol;
+            index = (index + 1) & mask;
+        }
+
+        return add(index, new String(source, start, length), hash);
+    }
+
+    // what other's symbols are in this table: the result is indexed by their id
+    Symbol[] addAll(SymbolTable other) {
+        Symbol[] symbols = new Symbol[other.count];
+
+        for (Symbol symbol : other.table) {
+            if (symbol != null) symbols[symbol.id] = intern(symbol);
+        }
+
+        return symbols;
+    }
+
+    private Symbol intern(Symbol other) {
+        int hash = other.hashCode();
+
+        int mask = table.length - 1;
+        int index = hash & mask;
+        for (Symbol symbol = table[index]; symbol != null; symbol = table[index]) {
+            if (symbol.hashCode() == hash && symbol.name.equals(other.name)) return symbol;
+            index = (index + 1) & mask;
+        }
+
+        return add(index, other.name, hash);
+    }
+
+    private Symbol add(int index, String name, int hash) {
+        Symbol symbol = new Symbol(name, count++, hash);
+        table[index] = symbol;
+
+        if (count * 2 > table.length) grow();
+
+        return symbol;
+    }
+
+    private void grow() {
+        Symbol[] old = table;
+        table = new Symbol[old.length * 2];
+
+        int mask = table.length - 1;
+        for (Symbol symbol : old) {
+            if (symbol == null) continue;
+
+            int index = symbol.hashCode() & mask;
+            while (table[index] != null) {
+                index = (index + 1) & mask;
+            }
+            table[index] = symbol;
+        }
+    }
+}
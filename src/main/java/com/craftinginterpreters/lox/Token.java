@@ -2,19 +2,66 @@ package com.craftinginterpreters.lox;
 
 class Token {
     final TokenType type;
-    final String lexeme;
     final Object literal;
     final int line;
 
+    // The lexeme is only a position in the source until somebody asks for it: most tokens
+    // (punctuation, operators, keywords) never need their text as a String.
+    private final char[] source;
+    private final int start;
+    private final int length;
+    private String lexeme;
+
+    // for identifiers, their interned name (or a Symbol of their own, for a token that
+    // didn't come out of a Scanner)
+    private Symbol symbol;
+
     Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+
+        this.source = null;
+        this.start = 0;
+        this.length = 0;
+    }
+
+    // An identifier the scanner already interned: its lexeme is the symbol's name, shared by
+    // every token of that identifier.
+    Token(Symbol symbol, int line) {
+        this(TokenType.IDENTIFIER, symbol.name, null, line);
+        this.symbol = symbol;
+    }
+
+    Token(TokenType type, char[] source, int start, int length, Object literal, int line) {
+        this.type = type;
+        this.literal = literal;
+        this.line = line;
+
+        this.source = source;
+        this.start = start;
+        this.length = length;
+    }
+
+    String lexeme() {
+        if (lexeme == null) {
+            lexeme = new String(source, start, length);
+        }
+
+        return lexeme;
+    }
+
+    Symbol symbol() {
+        if (symbol == null) {
+            symbol = new Symbol(lexeme());
+        }
+
+        return symbol;
     }
 
     @Override
     public String toString() {
-        return type + " " + lexeme + " " + literal;
+        return type + " " + lexeme() + " " + literal;
     }
 }
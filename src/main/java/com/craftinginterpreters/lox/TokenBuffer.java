@@ -0,0 +1,280 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The tokens of a source, stored column-wise: one array per field instead of one Token
+ * object per token, so a token costs 13 bytes instead of an object, its header and a
+ * list slot. A token is just its index in here.
+ *
+ * Only some tokens carry a value: numbers and strings their literal, identifiers their
+ * interned Symbol. Those are kept in a side table, ordered by token index, instead of a
+ * column that would be mostly nulls.
+ *
+ * Parser reads types and values straight from the columns and only builds a Token
+ * (token(int)) for the ones that end up in the AST or in an error message.
+ *
+ * The buffer doesn't need to hold every token. Reading a token that hasn't been scanned
+ * yet pulls it from the Scanner (Scanner.nextToken), and a buffer with a single reader
+ * (singleReader()) lets it release() the tokens it's done with: their room is reused
+ * instead of growing. Parsing a
+ * stream that way only ever holds the few tokens around the one being parsed. Indexes
+ * stay the same either way, they count from the start of the source.
+ *
+ * Errors found by a Scanner filling the buffer as it's read are reported right away, which
+ * is when the parser gets to the token being scanned. A buffer filled up front keeps its
+ * scan errors instead, each with the token it was found scanning, and the Parser reports
+ * them when it gets there: either way, scan and syntax errors come out in source order.
+ */
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final char[] source;
+    private final Scanner scanner;
+
+    // slot i of the columns holds token base + i
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int base;
+    private int size;
+
+    // tokens below this won't be read again
+    private int released;
+
+    // set by the caller that hands the buffer to its one and only reader (see Lox.scan)
+    private boolean singleReader = false;
+
+    // values[i] is the literal or symbol of token valueTokens[i]
+    private int[] valueTokens;
+    private Object[] values;
+    private int valueCount;
+
+    static final class ScanError {
+        final int token;
+        final int line;
+        final String message;
+
+        ScanError(int token, int line, String message) {
+            this.token = token;
+            this.line = line;
+            this.message = message;
+        }
+    }
+
+    // in token order, only for a buffer filled up front (see ParallelScanner)
+    private final List<ScanError> errors = new ArrayList<>();
+
+    TokenBuffer(char[] source, Scanner scanner) {
+        this.source = source;
+        this.scanner = scanner;
+
+        types = new byte[64];
+        starts = new int[64];
+        lengths = new int[64];
+        lines = new int[64];
+
+        valueTokens = new int[16];
+        values = new Object[16];
+    }
+
+    // value is the token's literal, or its Symbol for an identifier
+    void add(TokenType type, int start, int length, Object value, int line) {
+        if (size - base == types.length) {
+            makeRoom();
+        }
+
+        if (value != null) {
+            if (valueCount == values.length) {
+                valueTokens = Arrays.copyOf(valueTokens, valueCount * 2);
+                values = Arrays.copyOf(values, valueCount * 2);
+            }
+
+            valueTokens[valueCount] = size;
+            values[valueCount] = value;
+            valueCount++;
+        }
+
+        int slot = size - base;
+        types[slot] = (byte) type.ordinal();
+        starts[slot] = start;
+        lengths[slot] = length;
+        lines[slot] = line;
+        size++;
+    }
+
+    // Adds all the tokens of other after these ones, values and all. other's identifiers
+    // become symbols[id] of their Symbol: other may have been scanned with another table.
+    void addAll(TokenBuffer other, Symbol[] symbols) {
+        int count = other.size - other.base;
+        int slot = size - base;
+
+        if (slot + count > types.length) {
+            int capacity = Math.max(types.length * 2, slot + count);
+
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+
+        System.arraycopy(other.types, 0, types, slot, count);
+        System.arraycopy(other.starts, 0, starts, slot, count);
+        System.arraycopy(other.lengths, 0, lengths, slot, count);
+        System.arraycopy(other.lines, 0, lines, slot, count);
+
+        if (valueCount + other.valueCount > values.length) {
+            int capacity = Math.max(values.length * 2, valueCount + other.valueCount);
+
+            valueTokens = Arrays.copyOf(valueTokens, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        // other's tokens are numbered from its base, here they come after ours
+        for (int i = 0; i < other.valueCount; i++) {
+            valueTokens[valueCount + i] = other.valueTokens[i] - other.base + size;
+        }
+        for (int i = 0; i < other.valueCount; i++) {
+            Object value = other.values[i];
+            values[valueCount + i] = value instanceof Symbol ? symbols[((Symbol) value).id] : value;
+        }
+
+        valueCount += other.valueCount;
+
+        for (ScanError error : other.errors) {
+            errors.add(new ScanError(error.token - other.base + size, error.line, error.message));
+        }
+
+        size += count;
+    }
+
+    // a scan error found while scanning the token at index, for the Parser to report
+    void error(int index, int line, String message) {
+        errors.add(new ScanError(index, line, message));
+    }
+
+    // index of the first token at or after index that has scan errors, MAX_VALUE if none
+    int nextError(int index) {
+        for (ScanError error : errors) {
+            if (error.token >= index) return error.token;
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
+    // the scan errors of the tokens in [from, to), in order
+    List<ScanError> errors(int from, int to) {
+        List<ScanError> found = new ArrayList<>();
+        for (ScanError error : errors) {
+            if (error.token >= from && error.token < to) found.add(error);
+        }
+
+        return found;
+    }
+
+    // Only one reader will ever read this buffer, front to back, so the tokens it releases
+    // can be dropped.
+    TokenBuffer singleReader() {
+        singleReader = true;
+        return this;
+    }
+
+    // The caller won't read tokens before index anymore. Their room is only reused when it's
+    // the buffer's single reader: otherwise another reader (say, one of ParallelParser's
+    // chunks) may still need them, so the call does nothing.
+    void release(int index) {
+        if (singleReader && index > released) released = index;
+    }
+
+    // drops the room left over from growing, once nothing more will be added
+    void trim() {
+        int count = size - base;
+
+        types = Arrays.copyOf(types, count);
+        starts = Arrays.copyOf(starts, count);
+        lengths = Arrays.copyOf(lengths, count);
+        lines = Arrays.copyOf(lines, count);
+
+        valueTokens = Arrays.copyOf(valueTokens, valueCount);
+        values = Arrays.copyOf(values, valueCount);
+    }
+
+    // how many tokens have been scanned so far, released or not
+    int size() {
+        return size;
+    }
+
+    TokenType type(int index) {
+        if (index >= size) fill(index);
+        return TYPES[types[index - base]];
+    }
+
+    int line(int index) {
+        if (index >= size) fill(index);
+        return lines[index - base];
+    }
+
+    Object literal(int index) {
+        if (type(index) == TokenType.IDENTIFIER) return null;
+
+        return value(index);
+    }
+
+    // A Token for the token at index, for the AST. Its lexeme still isn't copied until it's
+    // asked for, and identifiers share their symbol's.
+    Token token(int index) {
+        TokenType type = type(index);
+        int slot = index - base;
+
+        if (type == TokenType.IDENTIFIER) return new Token((Symbol) value(index), lines[slot]);
+
+        return new Token(type, source, starts[slot], lengths[slot], value(index), lines[slot]);
+    }
+
+    private Object value(int index) {
+        int found = Arrays.binarySearch(valueTokens, 0, valueCount, index);
+        if (found < 0) return null;
+
+        return values[found];
+    }
+
+    private void fill(int index) {
+        while (size <= index) {
+            scanner.nextToken();
+        }
+    }
+
+    // Full: when at least half of the tokens held are released, they're dropped and the rest
+    // moved down. Otherwise the columns grow.
+    private void makeRoom() {
+        int capacity = types.length;
+        int drop = released - base;
+
+        if (drop < capacity / 2) {
+            types = Arrays.copyOf(types, capacity * 2);
+            starts = Arrays.copyOf(starts, capacity * 2);
+            lengths = Arrays.copyOf(lengths, capacity * 2);
+            lines = Arrays.copyOf(lines, capacity * 2);
+            return;
+        }
+
+        int count = size - released;
+        System.arraycopy(types, drop, types, 0, count);
+        System.arraycopy(starts, drop, starts, 0, count);
+        System.arraycopy(lengths, drop, lengths, 0, count);
+        System.arraycopy(lines, drop, lines, 0, count);
+        base = released;
+
+        // the values of the dropped tokens go too
+        int first = Arrays.binarySearch(valueTokens, 0, valueCount, released);
+        if (first < 0) first = -first - 1;
+
+        valueCount -= first;
+        System.arraycopy(valueTokens, first, valueTokens, 0, valueCount);
+        System.arraycopy(values, first, values, 0, valueCount);
+        Arrays.fill(values, valueCount, valueCount + first, null);
+    }
+}
@@ -0,0 +1,367 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.Interpreter.*;
+import static com.craftinginterpreters.lox.OpCode.*;
+
+/*
+ * Stack based virtual machine running the output of BytecodeCompiler.
+ *
+ * Temporaries live on the operand stack, while variables still live in Environment
+ * objects (globals by name, locals by slot) exactly like in the Interpreter. That way
+ * closures work the same in both backends, and both share the same global state.
+ *
+ * Lox functions are called by pushing a Frame instead of recursing in Java, so
+ * `return` and `break` are plain jumps rather than exceptions.
+ */
+class VM {
+
+    private static class Frame {
+        CompiledFunction function;
+        int ip;
+        Environment environment;
+
+        // where the callee sits on the stack, everything above belongs to this frame
+        int base;
+    }
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+
+    private Frame[] frames = new Frame[64];
+    private int frameCount = 0;
+
+    VM(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    void run(CompiledFunction script) {
+        try {
+            push(null);
+            pushFrame(script, globals, 0);
+            execute(0);
+            pop();
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        } finally {
+            clear();
+        }
+    }
+
+    // The VM lives as long as Lox does (think REPL), so nothing a finished program referenced
+    // may stay on it: after an error, the whole stack and every frame are still there, and
+    // returns leave what the callee had above sp even when it went fine.
+    private void clear() {
+        Arrays.fill(stack, null);
+        Arrays.fill(frames, 0, frameCount, null);
+
+        sp = 0;
+        frameCount = 0;
+    }
+
+    // Runs function until it returns. Used when something outside of the VM loop
+    // (i.e. native code) calls back into a function compiled for the VM.
+    Object invoke(VmFunction function, Object[] arguments, int first) {
+        int base = sp;
+        push(function);
+        for (int i = 0; i < function.function.arity; i++) {
+            push(arguments[first + i]);
+        }
+
+        int depth = frameCount;
+        callFunction(function, function.function.arity, base);
+        execute(depth);
+
+        return pop();
+    }
+
+    // Runs until the frame count drops back to `depth`, leaving the return value
+    // of the last frame on top of the stack.
+    private void execute(int depth) {
+        Frame frame = frames[frameCount - 1];
+        int[] code = frame.function.chunk.code;
+        Token[] tokens = frame.function.chunk.tokens;
+        List<Object> constants = frame.function.chunk.constants;
+        int ip = frame.ip;
+
+        for (;;) {
+            int instruction = code[ip++];
+
+            switch (instruction) {
+                case CONSTANT: push(constants.get(code[ip++])); break;
+                case NIL: push(null); break;
+                case TRUE: push(true); break;
+                case FALSE: push(false); break;
+                case POP: pop(); break;
+
+                case DEFINE_GLOBAL: {
+                    globals.define((Symbol) constants.get(code[ip++]), pop());
+                    break;
+                }
+                case GET_GLOBAL: {
+                    push(globals.get(tokens[ip++]));
+                    break;
+                }
+                case SET_GLOBAL: {
+                    globals.assign(tokens[ip++], peek(0));
+                    break;
+                }
+                case DEFINE_LOCAL: {
+                    frame.environment.define(code[ip++], pop());
+                    break;
+                }
+                case GET_LOCAL: {
+                    int distance = code[ip++];
+                    push(frame.environment.getAt(distance, code[ip++]));
+                    break;
+                }
+                case SET_LOCAL: {
+                    int distance = code[ip++];
+                    frame.environment.assignAt(distance, code[ip++], peek(0));
+                    break;
+                }
+
+                case EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(isEqual(left, right));
+                    break;
+                }
+                case NOT_EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(!isEqual(left, right));
+                    break;
+                }
+                case GREATER: {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(tokens[ip - 1], left, right);
+                    push((double) left > (double) right);
+                    break;
+                }
+                case GREATER_EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(tokens[ip - 1], left, right);
+                    push((double) left >= (double) right);
+                    break;
+                }
+                case LESS: {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(tokens[ip - 1], left, right);
+                    push((double) left < (double) right);
+                    break;
+                }
+                case LESS_EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(tokens[ip - 1], left, right);
+                    push((double) left <= (double) right);
+                    break;
+                }
+                case ADD: {
+                    Object right = pop();
+                    Object left = pop();
+
+                    if (left instanceof Double && right instanceof Double) {
+                        push((double) left + (double) right);
+                    } else if (left instanceof String) {
+                        push((String) left + stringify(right));
+                    } else if (right instanceof String) {
+                        push(stringify(left) + (String) right);
+                    } else {
+                        throw new RuntimeError(tokens[ip - 1], "Operands must be two strings or two numbers");
+                    }
+                    break;
+                }
+                case SUBTRACT: {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(tokens[ip - 1], left, right);
+                    push((double) left - (double) right);
+                    break;
+                }
+                case MULTIPLY: {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(tokens[ip - 1], left, right);
+                    push((double) left * (double) right);
+                    break;
+                }
+                case DIVIDE: {
+                    Object right = pop();
+                    Object left = pop();
+                    checkDivideByZero(tokens[ip - 1], right);
+                    checkNumberOperands(tokens[ip - 1], left, right);
+                    push((double) left / (double) right);
+                    break;
+                }
+                case NOT: {
+                    push(!isTruthy(pop()));
+                    break;
+                }
+                case NEGATE: {
+                    Object right = pop();
+                    checkNumberOperand(tokens[ip - 1], right);
+                    push(-(double) right);
+                    break;
+                }
+
+                case PRINT: {
+                    System.out.println(stringify(pop()));
+                    break;
+                }
+
+                case JUMP: {
+                    ip = code[ip];
+                    break;
+                }
+                case JUMP_IF_FALSE: {
+                    if (!isTruthy(peek(0))) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                    }
+                    break;
+                }
+                case JUMP_IF_TRUE: {
+                    if (isTruthy(peek(0))) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                    }
+                    break;
+                }
+
+                case PUSH_SCOPE: {
+                    frame.environment = new Environment(frame.environment, code[ip++]);
+                    break;
+                }
+                case POP_SCOPE: {
+                    frame.environment = frame.environment.enclosing;
+                    break;
+                }
+
+                case CLOSURE: {
+                    CompiledFunction function = (CompiledFunction) constants.get(code[ip++]);
+                    push(new VmFunction(function, frame.environment, this));
+                    break;
+                }
+                case CALL: {
+                    int argCount = code[ip++];
+                    Token paren = tokens[ip - 1];
+                    int base = sp - argCount - 1;
+                    Object callee = stack[base];
+
+                    if (!(callee instanceof LoxCallable)) {
+                        throw new RuntimeError(paren, "Can only call functions and classes.");
+                    }
+
+                    LoxCallable function = (LoxCallable) callee;
+                    if (argCount != function.arity()) {
+                        throw new RuntimeError(paren, String.format(
+                            "Expected %s arguments but got %s.",
+                            function.arity(), argCount
+                        ));
+                    }
+
+                    if (callee instanceof VmFunction) {
+                        frame.ip = ip;
+                        callFunction((VmFunction) callee, argCount, base);
+
+                        frame = frames[frameCount - 1];
+                        code = frame.function.chunk.code;
+                        tokens = frame.function.chunk.tokens;
+                        constants = frame.function.chunk.constants;
+                        ip = frame.ip;
+                    } else {
+                        // the arguments are already lined up on our stack, right after the callee
+                        Object result = function.call(interpreter, stack, base + 1);
+
+                        sp = base;
+                        push(result);
+                    }
+                    break;
+                }
+                case RETURN: {
+                    Object result = pop();
+
+                    sp = frame.base;
+                    frames[--frameCount] = null;
+                    push(result);
+
+                    if (frameCount == depth) return;
+
+                    frame = frames[frameCount - 1];
+                    code = frame.function.chunk.code;
+                    tokens = frame.function.chunk.tokens;
+                    constants = frame.function.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+
+                default:
+                    throw new IllegalStateException("Unknown opcode " + instruction);
+            }
+        }
+    }
+
+    // Binds the arguments (already on the stack, right after the callee) into a fresh
+    // environment and makes the function the current frame.
+    private void callFunction(VmFunction function, int argCount, int base) {
+        Environment environment = new Environment(function.closure, function.function.size);
+        for (int i = 0; i < argCount; i++) {
+            environment.define(i, stack[base + 1 + i]);
+            stack[base + 1 + i] = null;
+        }
+
+        stack[base] = null;
+        sp = base;
+        pushFrame(function.function, environment, base);
+    }
+
+    private void pushFrame(CompiledFunction function, Environment environment, int base) {
+        if (frameCount == frames.length) {
+            Frame[] newFrames = new Frame[frames.length * 2];
+            System.arraycopy(frames, 0, newFrames, 0, frameCount);
+            frames = newFrames;
+        }
+
+        Frame frame = new Frame();
+        frame.function = function;
+        frame.ip = 0;
+        frame.environment = environment;
+        frame.base = base;
+
+        frames[frameCount++] = frame;
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) {
+            Object[] newStack = new Object[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, sp);
+            stack = newStack;
+        }
+
+        stack[sp++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--sp];
+        stack[sp] = null;
+
+        return value;
+    }
+
+    private Object peek(int distance) {
+        return stack[sp - 1 - distance];
+    }
+}
@@ -0,0 +1,33 @@
+package com.craftinginterpreters.lox;
+
+// Runtime value of a function declared in code running on the VM.
+//
+// The VM calls these directly by pushing a new frame. call() is only here so
+// the function can still be handed to anything that expects a LoxCallable.
+class VmFunction implements LoxCallable {
+
+    final CompiledFunction function;
+    final Environment closure;
+    private final VM vm;
+
+    VmFunction(CompiledFunction function, Environment closure, VM vm) {
+        this.function = function;
+        this.closure = closure;
+        this.vm = vm;
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments, int first) {
+        return vm.invoke(this, arguments, first);
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
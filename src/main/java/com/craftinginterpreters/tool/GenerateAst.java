@@ -14,27 +14,27 @@ public class GenerateAst {
 
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-            "Assign   : Token name, Expr value",
+            "Assign   : Token name, Expr value | int depth = -1, int slot",
             "Binary   : Expr left, Token operator, Expr right",
-            "Call     : Expr callee, Token paren, List<Expr> arguments",
+            "Call     : Expr callee, Token paren, List<Expr> arguments | CallCache cache = new CallCache()",
             "Ternary  : Expr conditional, Expr truthy, Expr falsy",
             "Grouping : Expr expression",
             "Literal  : Object value",
             "Logical  : Expr left, Token operator, Expr right",
             "Unary    : Token operator, Expr right",
-            "Variable : Token name"
+            "Variable : Token name | int depth = -1, int slot"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
-            "Block      : List<Stmt> statements",
+            "Block      : List<Stmt> statements | int size",
             "Expression : Expr expression",
-            "Function   : Token name, List<Token> params, List<Stmt> body",
+            "Function   : Token name, List<Token> params, List<Stmt> body | int slot = -1, int size, boolean hasClosures, JitCompiler.Compiled compiled",
             "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
             "Print      : Expr expression",
-            "Return     : Token keyword, Expr value",
-            "Var        : Token name, Expr initializer",
+            "Return     : Token keyword, Expr value | boolean tailCall",
+            "Var        : Token name, Expr initializer | int slot = -1",
             "While      : Expr condition, Stmt body",
-            "Break      : "
+            "Break      : Token keyword"
         ));
     }
 
@@ -76,6 +76,12 @@ public class GenerateAst {
             return;
         }
 
+        // fields after "|" are not part of the constructor, they're filled in
+        // later by the Resolver (scope depth, slot index, etc) or at run time
+        // (call-site caches).
+        String[] parts = fieldList.split("\\|");
+        fieldList = parts[0].trim();
+
         writer.println("    static class " + className + " extends " + baseName + " {");
 
         // fields
@@ -84,6 +90,12 @@ public class GenerateAst {
             writer.println("        final " + field + ";");
         }
 
+        if (parts.length > 1) {
+            for (String field: parts[1].trim().split(", ")) {
+                writer.println("        " + field + ";");
+            }
+        }
+
         writer.println();
 
         // constructor
@@ -0,0 +1,126 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/*
+ * The cache is bounded by the estimated size of its programs, and drops the least recently
+ * run ones first. Programs are only compared by identity here, their content doesn't matter.
+ */
+class AstCacheTest {
+
+    private static ByteBuffer key(String source) {
+        return AstCache.key(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<Stmt> program() {
+        return new ArrayList<>();
+    }
+
+    @Test
+    void missingSourceIsNotCached() {
+        AstCache cache = new AstCache(100);
+
+        assertNull(cache.get(key("print 1;")));
+    }
+
+    @Test
+    void sameSourceGetsSameProgram() {
+        AstCache cache = new AstCache(100);
+        List<Stmt> program = program();
+
+        cache.put(key("print 1;"), program, 10);
+
+        // a new key for the same source, it's compared by content
+        assertSame(program, cache.get(key("print 1;")));
+        assertNull(cache.get(key("print 2;")));
+    }
+
+    @Test
+    void leastRecentlyRunIsDroppedFirst() {
+        AstCache cache = new AstCache(100);
+        List<Stmt> a = program();
+        List<Stmt> b = program();
+        List<Stmt> c = program();
+
+        cache.put(key("a"), a, 40);
+        cache.put(key("b"), b, 40);
+
+        // a was run after b, so b is the least recently run
+        cache.get(key("a"));
+        cache.put(key("c"), c, 40);
+
+        assertSame(a, cache.get(key("a")));
+        assertNull(cache.get(key("b")));
+        assertSame(c, cache.get(key("c")));
+    }
+
+    @Test
+    void dropsAsManyAsItTakes() {
+        AstCache cache = new AstCache(100);
+        List<Stmt> big = program();
+
+        cache.put(key("a"), program(), 30);
+        cache.put(key("b"), program(), 30);
+        cache.put(key("c"), program(), 30);
+        cache.put(key("big"), big, 80);
+
+        assertNull(cache.get(key("a")));
+        assertNull(cache.get(key("b")));
+        assertNull(cache.get(key("c")));
+        assertSame(big, cache.get(key("big")));
+    }
+
+    @Test
+    void fillsUpToCapacityExactly() {
+        AstCache cache = new AstCache(100);
+        List<Stmt> a = program();
+        List<Stmt> b = program();
+
+        cache.put(key("a"), a, 60);
+        cache.put(key("b"), b, 40);
+
+        assertSame(a, cache.get(key("a")));
+        assertSame(b, cache.get(key("b")));
+    }
+
+    @Test
+    void programBiggerThanTheCacheIsNotKept() {
+        AstCache cache = new AstCache(100);
+        List<Stmt> small = program();
+
+        cache.put(key("small"), small, 50);
+        cache.put(key("huge"), program(), 101);
+
+        assertNull(cache.get(key("huge")));
+
+        // and nothing was dropped to make room for it
+        assertSame(small, cache.get(key("small")));
+    }
+
+    @Test
+    void replacingAProgramOnlyCountsItOnce() {
+        AstCache cache = new AstCache(100);
+        List<Stmt> first = program();
+        List<Stmt> second = program();
+        List<Stmt> other = program();
+
+        cache.put(key("a"), first, 60);
+        cache.put(key("a"), second, 60);
+
+        assertSame(second, cache.get(key("a")));
+
+        // 60 + 40 fits: had the old entry still been counted, this would drop "a"
+        cache.put(key("b"), other, 40);
+
+        assertSame(second, cache.get(key("a")));
+        assertSame(other, cache.get(key("b")));
+    }
+}
@@ -0,0 +1,106 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Scan errors and syntax errors come out in source order, whether the source is scanned as
+ * it's parsed or up front in chunks (--parallel). The script is big enough for --parallel to
+ * cut it into several chunks, with errors in more than one of them.
+ */
+class ErrorOrderTest {
+
+    private static final int LINES = 8000;
+
+    private static final List<String> EXPECTED = Arrays.asList(
+        "[line 11] Error: Unexpected Character {0}.",
+        "[line 11] Error at ';': Expect expression.",
+        "[line 2001] Error at ';': Expect expression.",
+        "[line 3001] Error: Unexpected Character {0}.",
+        "[line 5001] Error: Unexpected Character {0}.",
+        "[line 5001] Error at ';': Expect expression.",
+        "[line 7002] Error at 'var': Expect ';' after variable declaration.",
+        "[line 8002] Error: Unterminated String",
+        "[line 8002] Error at the end: Expect expression.");
+
+    @TempDir
+    Path directory;
+
+    private final PrintStream err = System.err;
+
+    @BeforeEach
+    void reset() {
+        Lox.hadError = false;
+        Lox.hadRuntimeError = false;
+    }
+
+    @AfterEach
+    void restore() {
+        System.setErr(err);
+        Lox.parallel = false;
+        Lox.streaming = false;
+    }
+
+    @Test
+    void scanningAsParsed() throws IOException {
+        assertEquals(EXPECTED, errors(false, false));
+    }
+
+    @Test
+    void scanningInParallel() throws IOException {
+        assertTrue(ForkJoinPool.getCommonPoolParallelism() >= 2, "needs a parallel common pool");
+        assertEquals(EXPECTED, errors(true, false));
+    }
+
+    @Test
+    void streaming() throws IOException {
+        assertEquals(EXPECTED, errors(false, true));
+        assertEquals(EXPECTED, errors(true, true));
+    }
+
+    private List<String> errors(boolean parallel, boolean streaming) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < LINES; i++) {
+            lines.add("var v" + i + " = " + i + " + " + i + " * 2; // some padding to make it big");
+        }
+
+        lines.set(10, "var a = @;");
+        lines.set(2000, "var b = ;");
+        lines.set(3000, "var c = 1; @");   // a scan error alone, in a chunk that parses fine
+        lines.set(5000, "print #;");
+        lines.set(7000, "var d = 1");
+        lines.add("print \"unterminated");
+
+        Path script = directory.resolve("errors.lox");
+        Files.write(script, lines, StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(output, true, "UTF-8"));
+
+        Lox.parallel = parallel;
+        Lox.streaming = streaming;
+        Lox.hadError = false;
+        Lox.runFile(script.toString());
+
+        assertTrue(Lox.hadError);
+
+        String printed = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        return Arrays.asList(printed.split(System.lineSeparator()));
+    }
+}